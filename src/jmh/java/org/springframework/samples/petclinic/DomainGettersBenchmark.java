@@ -0,0 +1,84 @@
+package org.springframework.samples.petclinic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.samples.petclinic.owner.Owner;
+import org.springframework.samples.petclinic.owner.Pet;
+import org.springframework.samples.petclinic.vet.Specialty;
+import org.springframework.samples.petclinic.vet.Vet;
+import org.springframework.samples.petclinic.visit.Visit;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The sorting collection getters of the domain model, which the views call on every
+ * render.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DomainGettersBenchmark {
+
+	@Param({ "1", "10", "100" })
+	int elements;
+
+	private Owner owner;
+
+	private Pet pet;
+
+	private Vet vet;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		owner = new Owner();
+		pet = new Pet();
+		vet = new Vet();
+		LocalDate today = LocalDate.now();
+		for (int i = 0; i < elements; i++) {
+			// reverse order so the getters have real sorting to do
+			Pet ownedPet = new Pet();
+			ownedPet.setName("pet-" + (elements - i));
+			owner.addPet(ownedPet);
+
+			Visit visit = new Visit();
+			visit.setDate(today.minusDays(elements - i));
+			visit.setDescription("visit-" + i);
+			pet.addVisit(visit);
+
+			Specialty specialty = new Specialty();
+			specialty.setName("specialty-" + (elements - i));
+			vet.addSpecialty(specialty);
+		}
+	}
+
+	@Benchmark
+	public List<Pet> ownerGetPets() {
+		return owner.getPets();
+	}
+
+	@Benchmark
+	public List<Visit> petGetVisits() {
+		return pet.getVisits();
+	}
+
+	@Benchmark
+	public List<Specialty> vetGetSpecialties() {
+		return vet.getSpecialties();
+	}
+
+}
@@ -0,0 +1,92 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.samples.petclinic.model.BaseEntity;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * add / replace / remove on a populated {@link IdentityMap}. Each benchmark leaves the
+ * map at its initial size so the measured size stays fixed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdentityMapBenchmark {
+
+	@Param({ "1000", "100000", "1000000" })
+	int size;
+
+	private IdentityMap<BaseEntity> map;
+
+	/** pre-built entities for ids [0, size) */
+	private BaseEntity[] present;
+
+	/** pre-built entities for ids [size, 2 * size) */
+	private BaseEntity[] absent;
+
+	private int cursor;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		map = new IdentityMap<>();
+		present = new BaseEntity[size];
+		absent = new BaseEntity[size];
+		for (int i = 0; i < size; i++) {
+			present[i] = entity(i);
+			absent[i] = entity(size + i);
+			map.add(present[i]);
+		}
+	}
+
+	@Benchmark
+	public boolean addThenRemove() {
+		BaseEntity entity = absent[next()];
+		map.add(entity);
+		return map.remove(entity);
+	}
+
+	@Benchmark
+	public boolean replace() {
+		return map.add(present[next()]);
+	}
+
+	@Benchmark
+	public boolean removeThenAdd() {
+		BaseEntity entity = present[next()];
+		map.remove(entity);
+		return map.add(entity);
+	}
+
+	@Benchmark
+	public boolean contains() {
+		return map.contains(present[next()]);
+	}
+
+	private int next() {
+		int index = cursor;
+		cursor = index + 1 == size ? 0 : index + 1;
+		return index;
+	}
+
+	private static BaseEntity entity(int id) {
+		BaseEntity entity = new BaseEntity();
+		entity.setId(id);
+		return entity;
+	}
+
+}
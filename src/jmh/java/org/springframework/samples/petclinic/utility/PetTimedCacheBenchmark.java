@@ -0,0 +1,147 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.samples.petclinic.owner.Pet;
+import org.springframework.samples.petclinic.owner.PetRepository;
+import org.springframework.samples.petclinic.owner.PetType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PetTimedCache#get} on the hit and miss paths under 1, 8 and 64 threads. The
+ * repository is an in-memory stub, so the miss path measures the cache overhead rather
+ * than a database round trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PetTimedCacheBenchmark {
+
+	/** ids [0, HOT_PETS) exist and are cached, everything above is a miss */
+	private static final int HOT_PETS = 1024;
+
+	private PetTimedCache cache;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		PetTimedCacheProperties properties = new PetTimedCacheProperties();
+		// long expiry so the cleaner never evicts the hot set during a trial
+		properties.setExpiry(Duration.ofHours(1));
+		// misses must reach the repository rather than the negative cache
+		properties.setMissingMaximumSize(0);
+		cache = new PetTimedCache(properties, new InMemoryPetRepository());
+		for (int id = 0; id < HOT_PETS; id++) {
+			cache.get(id);
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Pet hit1() {
+		return hit();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public Pet hit8() {
+		return hit();
+	}
+
+	@Benchmark
+	@Threads(64)
+	public Pet hit64() {
+		return hit();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Pet miss1() {
+		return miss();
+	}
+
+	@Benchmark
+	@Threads(8)
+	public Pet miss8() {
+		return miss();
+	}
+
+	@Benchmark
+	@Threads(64)
+	public Pet miss64() {
+		return miss();
+	}
+
+	private Pet hit() {
+		return cache.get(ThreadLocalRandom.current().nextInt(HOT_PETS));
+	}
+
+	private Pet miss() {
+		return cache.get(HOT_PETS + ThreadLocalRandom.current().nextInt(HOT_PETS));
+	}
+
+	private static class InMemoryPetRepository implements PetRepository {
+
+		private final Pet[] pets = new Pet[HOT_PETS];
+
+		InMemoryPetRepository() {
+			for (int id = 0; id < HOT_PETS; id++) {
+				Pet pet = new Pet();
+				pet.setId(id);
+				pet.setName("pet-" + id);
+				pets[id] = pet;
+			}
+		}
+
+		@Override
+		public List<PetType> findPetTypes() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public Pet findById(Integer id) {
+			return id >= 0 && id < HOT_PETS ? pets[id] : null;
+		}
+
+		@Override
+		public List<Pet> findByIdIn(Collection<Integer> ids) {
+			List<Pet> found = new ArrayList<>(ids.size());
+			for (Integer id : ids) {
+				Pet pet = findById(id);
+				if (pet != null) {
+					found.add(pet);
+				}
+			}
+			return found;
+		}
+
+		@Override
+		public void save(Pet pet) {
+		}
+
+		@Override
+		public void saveAll(Iterable<Pet> pets) {
+		}
+
+	}
+
+}
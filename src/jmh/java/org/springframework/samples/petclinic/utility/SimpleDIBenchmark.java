@@ -0,0 +1,102 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SimpleDI#getInstanceOf(Class)} for a registered instance, for a singleton
+ * built by a constructor function and for an instance of an open scope, under 1 and 8
+ * threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimpleDIBenchmark {
+
+	private SimpleDI container;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		container = new SimpleDIContainer();
+		container.provideByInstance(Instance.class, new Instance());
+		container.provideByAConstructorFunction(Constructed.class, Constructed::new);
+		container.provideByAConstructorFunction(Scoped.class, SimpleDI.Lifetime.SCOPED, Scoped::new);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Object instance1() throws Exception {
+		return container.getInstanceOf(Instance.class);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Object constructed1() throws Exception {
+		return container.getInstanceOf(Constructed.class);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public Object constructed8() throws Exception {
+		return container.getInstanceOf(Constructed.class);
+	}
+
+	@Benchmark
+	@Threads(1)
+	public Object scoped1(OpenScope scope) throws Exception {
+		return container.getInstanceOf(Scoped.class);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public Object scoped8(OpenScope scope) throws Exception {
+		return container.getInstanceOf(Scoped.class);
+	}
+
+	/**
+	 * A scope of the benchmark's container per benchmark thread, opened and closed by that
+	 * thread.
+	 */
+	@State(Scope.Thread)
+	public static class OpenScope {
+
+		private SimpleDI.Scope scope;
+
+		@Setup(Level.Iteration)
+		public void open(SimpleDIBenchmark benchmark) {
+			scope = benchmark.container.openScope();
+		}
+
+		@TearDown(Level.Iteration)
+		public void close() {
+			scope.close();
+		}
+
+	}
+
+	public static class Instance {
+	}
+
+	public static class Constructed {
+	}
+
+	public static class Scoped {
+	}
+
+}
@@ -15,7 +15,10 @@
  */
 package org.springframework.samples.petclinic.owner;
 
-import org.springframework.samples.petclinic.visit.VisitRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
@@ -24,10 +27,15 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.InitBinder;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.ModelAndView;
 
 import javax.validation.Valid;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -43,11 +51,16 @@ class OwnerController {
 
 	private final OwnerRepository owners;
 
-	private VisitRepository visits;
+	private final int pageSize;
 
-	public OwnerController(OwnerRepository clinicService, VisitRepository visits) {
+	/** {@code null} unless enabled */
+	private final OwnerNameIndex nameIndex;
+
+	public OwnerController(OwnerRepository clinicService, @Value("${petclinic.owners.page-size:20}") int pageSize,
+			ObjectProvider<OwnerNameIndex> nameIndex) {
 		this.owners = clinicService;
-		this.visits = visits;
+		this.pageSize = pageSize;
+		this.nameIndex = nameIndex.getIfAvailable();
 	}
 
 	@InitBinder
@@ -69,6 +82,7 @@ class OwnerController {
 		}
 		else {
 			this.owners.save(owner);
+			indexName(owner);
 			return "redirect:/owners/" + owner.getId();
 		}
 	}
@@ -79,33 +93,126 @@ class OwnerController {
 		return "owners/findOwners";
 	}
 
+	/**
+	 * Searches owners by last name, one page at a time. Pages are addressed by the last
+	 * name and id of the owner they continue after or go back from, so every page is an
+	 * index range scan on {@code (last_name, id)} however deep it is. A request with
+	 * both cursors, or with only half of one, is rejected; the page links never send one.
+	 * With the {@link OwnerNameIndex} enabled, every page is found in memory and its
+	 * owners are read by primary key.
+	 */
 	@GetMapping("/owners")
-	public String processFindForm(Owner owner, BindingResult result, Map<String, Object> model) {
+	public String processFindForm(Owner owner, BindingResult result, Map<String, Object> model,
+			@RequestParam(required = false) String afterLastName, @RequestParam(required = false) Integer afterId,
+			@RequestParam(required = false) String beforeLastName, @RequestParam(required = false) Integer beforeId) {
 
 		// allow parameterless GET request for /owners to return all records
 		if (owner.getLastName() == null) {
 			owner.setLastName(""); // empty string signifies broadest possible search
 		}
 
-		// find owners by last name
-		Collection<Owner> results = this.owners.findByLastName(owner.getLastName());
-		if (results.isEmpty()) {
+		boolean after = afterLastName != null || afterId != null;
+		boolean before = beforeLastName != null || beforeId != null;
+		if ((after && before) || (after && (afterLastName == null || afterId == null))
+				|| (before && (beforeLastName == null || beforeId == null))) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					"A page is addressed by either afterLastName and afterId or beforeLastName and beforeId");
+		}
+		boolean firstPage = !after && !before;
+		boolean forward = !before;
+
+		// find owners by last name, one more than a page to tell whether there are more
+		List<Owner> results;
+		if (this.nameIndex != null) {
+			List<Integer> ids;
+			if (after) {
+				ids = this.nameIndex.findIdsAfter(owner.getLastName(), afterLastName, afterId, this.pageSize + 1);
+			}
+			else if (before) {
+				ids = this.nameIndex.findIdsBefore(owner.getLastName(), beforeLastName, beforeId, this.pageSize + 1);
+			}
+			else {
+				ids = this.nameIndex.findIds(owner.getLastName(), this.pageSize + 1);
+			}
+			if (firstPage && ids.size() == 1) {
+				return "redirect:/owners/" + ids.get(0);
+			}
+			results = findByIds(ids);
+		}
+		else {
+			PageRequest page = PageRequest.of(0, this.pageSize + 1);
+			if (after) {
+				results = this.owners.findPageByLastNameAfter(owner.getLastName(), afterLastName, afterId, page);
+			}
+			else if (before) {
+				results = new ArrayList<>(
+						this.owners.findPageByLastNameBefore(owner.getLastName(), beforeLastName, beforeId, page));
+			}
+			else {
+				results = this.owners.findPageByLastName(owner.getLastName(), page);
+			}
+		}
+		boolean more = results.size() > this.pageSize;
+		if (more) {
+			results = results.subList(0, this.pageSize);
+		}
+		if (!forward) {
+			Collections.reverse(results);
+		}
+		// going back, the page we came from follows
+		boolean hasNext = forward ? more : true;
+		boolean hasPrevious = forward ? !firstPage : more;
+
+		if (firstPage && results.isEmpty()) {
 			// no owners found
 			result.rejectValue("lastName", "notFound", "not found");
 			return "owners/findOwners";
 		}
-		else if (results.size() == 1) {
+		else if (firstPage && results.size() == 1) {
 			// 1 owner found
-			owner = results.iterator().next();
+			owner = results.get(0);
 			return "redirect:/owners/" + owner.getId();
 		}
 		else {
 			// multiple owners found
 			model.put("selections", results);
+			if (hasNext && !results.isEmpty()) {
+				model.put("next", results.get(results.size() - 1));
+			}
+			if (hasPrevious && !results.isEmpty()) {
+				model.put("previous", results.get(0));
+			}
 			return "owners/ownersList";
 		}
 	}
 
+	/**
+	 * @return the owners in the order of the ids, those no longer found left out
+	 */
+	private List<Owner> findByIds(List<Integer> ids) {
+		List<Owner> ordered = new ArrayList<>(ids.size());
+		if (ids.isEmpty()) {
+			return ordered;
+		}
+		Map<Integer, Owner> byId = new HashMap<>();
+		for (Owner owner : this.owners.findByIdIn(ids)) {
+			byId.put(owner.getId(), owner);
+		}
+		for (Integer id : ids) {
+			Owner owner = byId.get(id);
+			if (owner != null) {
+				ordered.add(owner);
+			}
+		}
+		return ordered;
+	}
+
+	private void indexName(Owner owner) {
+		if (this.nameIndex != null) {
+			this.nameIndex.put(owner.getId(), owner.getLastName());
+		}
+	}
+
 	@GetMapping("/owners/{ownerId}/edit")
 	public String initUpdateOwnerForm(@PathVariable("ownerId") int ownerId, Model model) {
 		Owner owner = this.owners.findById(ownerId);
@@ -122,23 +229,21 @@ class OwnerController {
 		else {
 			owner.setId(ownerId);
 			this.owners.save(owner);
+			indexName(owner);
 			return "redirect:/owners/{ownerId}";
 		}
 	}
 
 	/**
-	 * Custom handler for displaying an owner.
+	 * Custom handler for displaying an owner. The owner, its pets and their visits are
+	 * read with a single query into an {@link OwnerDetails} read model.
 	 * @param ownerId the ID of the owner to display
 	 * @return a ModelMap with the model attributes for the view
 	 */
 	@GetMapping("/owners/{ownerId}")
 	public ModelAndView showOwner(@PathVariable("ownerId") int ownerId) {
 		ModelAndView mav = new ModelAndView("owners/ownerDetails");
-		Owner owner = this.owners.findById(ownerId);
-		for (Pet pet : owner.getPets()) {
-			pet.setVisitsInternal(visits.findByPetId(pet.getId()));
-		}
-		mav.addObject(owner);
+		mav.addObject("owner", this.owners.findDetailsById(ownerId));
 		return mav;
 	}
 
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only view of an owner with its pets, their types and their visits, as shown on
+ * the owner details page. Unlike {@link Owner} it is not a managed entity, it is built
+ * from the rows of a single query and cannot be changed.
+ */
+public final class OwnerDetails {
+
+	private final Integer id;
+
+	private final String firstName;
+
+	private final String lastName;
+
+	private final String address;
+
+	private final String city;
+
+	private final String telephone;
+
+	private final List<PetDetails> pets;
+
+	public OwnerDetails(Integer id, String firstName, String lastName, String address, String city, String telephone,
+			List<PetDetails> pets) {
+		this.id = id;
+		this.firstName = firstName;
+		this.lastName = lastName;
+		this.address = address;
+		this.city = city;
+		this.telephone = telephone;
+		this.pets = Collections.unmodifiableList(new ArrayList<>(pets));
+	}
+
+	/**
+	 * @param rows the rows of one owner, pets ordered by name and visits by date, most
+	 * recent first
+	 * @return the owner, or {@code null} if there are no rows
+	 */
+	static OwnerDetails fromRows(List<OwnerDetailsRow> rows) {
+		if (rows.isEmpty()) {
+			return null;
+		}
+		Map<Integer, OwnerDetailsRow> pets = new LinkedHashMap<>();
+		Map<Integer, List<VisitDetails>> visits = new LinkedHashMap<>();
+		for (OwnerDetailsRow row : rows) {
+			if (row.petId == null) {
+				continue;
+			}
+			pets.putIfAbsent(row.petId, row);
+			List<VisitDetails> petVisits = visits.computeIfAbsent(row.petId, petId -> new ArrayList<>());
+			if (row.visitId != null) {
+				petVisits.add(new VisitDetails(row.visitDate, row.visitDescription));
+			}
+		}
+		List<PetDetails> petDetails = new ArrayList<>(pets.size());
+		for (OwnerDetailsRow pet : pets.values()) {
+			petDetails.add(new PetDetails(pet.petId, pet.petName, pet.birthDate, pet.petType, visits.get(pet.petId)));
+		}
+		OwnerDetailsRow owner = rows.get(0);
+		return new OwnerDetails(owner.ownerId, owner.firstName, owner.lastName, owner.address, owner.city,
+				owner.telephone, petDetails);
+	}
+
+	public Integer getId() {
+		return this.id;
+	}
+
+	public String getFirstName() {
+		return this.firstName;
+	}
+
+	public String getLastName() {
+		return this.lastName;
+	}
+
+	public String getAddress() {
+		return this.address;
+	}
+
+	public String getCity() {
+		return this.city;
+	}
+
+	public String getTelephone() {
+		return this.telephone;
+	}
+
+	public List<PetDetails> getPets() {
+		return this.pets;
+	}
+
+	public static final class PetDetails {
+
+		private final Integer id;
+
+		private final String name;
+
+		private final LocalDate birthDate;
+
+		private final String type;
+
+		private final List<VisitDetails> visits;
+
+		public PetDetails(Integer id, String name, LocalDate birthDate, String type, List<VisitDetails> visits) {
+			this.id = id;
+			this.name = name;
+			this.birthDate = birthDate;
+			this.type = type;
+			this.visits = Collections.unmodifiableList(new ArrayList<>(visits));
+		}
+
+		public Integer getId() {
+			return this.id;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		public LocalDate getBirthDate() {
+			return this.birthDate;
+		}
+
+		public String getType() {
+			return this.type;
+		}
+
+		public List<VisitDetails> getVisits() {
+			return this.visits;
+		}
+
+	}
+
+	public static final class VisitDetails {
+
+		private final LocalDate date;
+
+		private final String description;
+
+		public VisitDetails(LocalDate date, String description) {
+			this.date = date;
+			this.description = description;
+		}
+
+		public LocalDate getDate() {
+			return this.date;
+		}
+
+		public String getDescription() {
+			return this.description;
+		}
+
+	}
+
+}
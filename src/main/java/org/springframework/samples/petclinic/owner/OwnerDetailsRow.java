@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.time.LocalDate;
+
+/**
+ * One row of {@link OwnerRepository#findDetailsRowsById(Integer)}: an owner joined with
+ * one of its pets and one of the pet's visits. The pet and visit columns are
+ * {@code null} if there is none.
+ */
+public final class OwnerDetailsRow {
+
+	final Integer ownerId;
+
+	final String firstName;
+
+	final String lastName;
+
+	final String address;
+
+	final String city;
+
+	final String telephone;
+
+	final Integer petId;
+
+	final String petName;
+
+	final LocalDate birthDate;
+
+	final String petType;
+
+	final Integer visitId;
+
+	final LocalDate visitDate;
+
+	final String visitDescription;
+
+	public OwnerDetailsRow(Integer ownerId, String firstName, String lastName, String address, String city,
+			String telephone, Integer petId, String petName, LocalDate birthDate, String petType, Integer visitId,
+			LocalDate visitDate, String visitDescription) {
+		this.ownerId = ownerId;
+		this.firstName = firstName;
+		this.lastName = lastName;
+		this.address = address;
+		this.city = city;
+		this.telephone = telephone;
+		this.petId = petId;
+		this.petName = petName;
+		this.birthDate = birthDate;
+		this.petType = petType;
+		this.visitId = visitId;
+		this.visitDate = visitDate;
+		this.visitDescription = visitDescription;
+	}
+
+}
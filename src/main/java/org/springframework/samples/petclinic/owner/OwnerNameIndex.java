@@ -0,0 +1,242 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory index from owner last names to owner ids, answering "the owners whose last
+ * name starts with ..., one page at a time" without a query. Enabled with
+ * {@code petclinic.owners.name-index=true}.
+ * <p>
+ * The index is a sorted array of interned last names with a parallel array of ids,
+ * ordered by name and then id like the owner search. Names are compared and matched
+ * ignoring case, as the database does for the {@code VARCHAR_IGNORECASE} column
+ * {@code owners.last_name}, so the index finds the owners the search query finds, in
+ * the same order. A lookup is a binary search for the prefix, or the owner a page
+ * continues from, followed by a scan of at most {@code limit} entries. Every change
+ * publishes a new copy of the arrays, so lookups take no lock; owners are saved far less
+ * often than they are searched for. The index is loaded once all beans exist, and kept
+ * current by {@link OwnerController} whenever it saves an owner. Owners written by other
+ * means are only seen after a restart.
+ */
+@Component
+@ConditionalOnProperty(name = "petclinic.owners.name-index", havingValue = "true")
+public class OwnerNameIndex implements SmartInitializingSingleton {
+
+	/** the order of {@code owners.last_name}, see {@code schema.sql} */
+	private static final Comparator<String> NAME_ORDER = String.CASE_INSENSITIVE_ORDER;
+
+	private final OwnerRepository owners;
+
+	private volatile Entries entries = new Entries(new String[0], new int[0]);
+
+	/** the indexed name of every owner, guarded by {@code this} */
+	private final Map<Integer, String> namesById = new HashMap<>();
+
+	public OwnerNameIndex(OwnerRepository owners) {
+		this.owners = owners;
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		load(this.owners.findAllLastNames());
+	}
+
+	synchronized void load(List<Object[]> idsAndLastNames) {
+		this.namesById.clear();
+		for (Object[] idAndLastName : idsAndLastNames) {
+			this.namesById.put((Integer) idAndLastName[0], key((String) idAndLastName[1]));
+		}
+		List<Map.Entry<Integer, String>> sorted = new ArrayList<>(this.namesById.entrySet());
+		sorted.sort(Map.Entry.<Integer, String>comparingByValue(NAME_ORDER).thenComparing(Map.Entry.comparingByKey()));
+		String[] names = new String[sorted.size()];
+		int[] ids = new int[sorted.size()];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = sorted.get(i).getValue();
+			ids[i] = sorted.get(i).getKey();
+		}
+		this.entries = new Entries(names, ids);
+	}
+
+	/**
+	 * Adds the owner, or moves it if its last name changed.
+	 */
+	public synchronized void put(Integer id, String lastName) {
+		String name = key(lastName);
+		String previous = this.namesById.put(id, name);
+		if (name.equals(previous)) {
+			return;
+		}
+		Entries updated = this.entries;
+		if (previous != null) {
+			updated = updated.without(previous, id);
+		}
+		this.entries = updated.with(name, id);
+	}
+
+	/**
+	 * @param prefix the start of the last name, case is ignored like in the database
+	 * @param limit how many ids to return, at most
+	 * @return the ids of the first owners, ordered by last name and id, whose last name
+	 * starts with the prefix
+	 */
+	public List<Integer> findIds(String prefix, int limit) {
+		Entries entries = this.entries;
+		List<Integer> ids = new ArrayList<>(Math.min(limit, 16));
+		for (int i = entries.indexOf(prefix, Integer.MIN_VALUE); i < entries.names.length && ids.size() < limit
+				&& startsWith(entries.names[i], prefix); i++) {
+			ids.add(entries.ids[i]);
+		}
+		return ids;
+	}
+
+	/**
+	 * @param prefix the start of the last name, case is ignored like in the database
+	 * @param lastName the last name of the owner to continue after
+	 * @param id the id of the owner to continue after
+	 * @param limit how many ids to return, at most
+	 * @return the ids of the owners that follow the given one in the order of
+	 * {@link #findIds(String, int)}
+	 */
+	public List<Integer> findIdsAfter(String prefix, String lastName, int id, int limit) {
+		Entries entries = this.entries;
+		List<Integer> ids = new ArrayList<>(Math.min(limit, 16));
+		for (int i = Math.max(entries.indexOf(prefix, Integer.MIN_VALUE), entries.indexAfter(lastName, id));
+				i < entries.names.length && ids.size() < limit && startsWith(entries.names[i], prefix); i++) {
+			ids.add(entries.ids[i]);
+		}
+		return ids;
+	}
+
+	/**
+	 * @param prefix the start of the last name, case is ignored like in the database
+	 * @param lastName the last name of the owner to go back from
+	 * @param id the id of the owner to go back from
+	 * @param limit how many ids to return, at most
+	 * @return the ids of the owners that precede the given one in the order of
+	 * {@link #findIds(String, int)}, <i>in reverse order</i>, closest to the given one first
+	 */
+	public List<Integer> findIdsBefore(String prefix, String lastName, int id, int limit) {
+		Entries entries = this.entries;
+		List<Integer> ids = new ArrayList<>(Math.min(limit, 16));
+		int i = entries.indexOf(lastName, id) - 1;
+		// skip the names past the prefix, if the owner is not one of its matches
+		while (i >= 0 && !startsWith(entries.names[i], prefix) && NAME_ORDER.compare(entries.names[i], prefix) > 0) {
+			i--;
+		}
+		for (; i >= 0 && ids.size() < limit && startsWith(entries.names[i], prefix); i--) {
+			ids.add(entries.ids[i]);
+		}
+		return ids;
+	}
+
+	public int size() {
+		return this.entries.names.length;
+	}
+
+	/**
+	 * Interned, so that owners sharing a last name share the string.
+	 */
+	private static String key(String lastName) {
+		return lastName == null ? "" : lastName.intern();
+	}
+
+	private static boolean startsWith(String name, String prefix) {
+		return name.regionMatches(true, 0, prefix, 0, prefix.length());
+	}
+
+	/**
+	 * Names and ids sorted by name, then id. Never modified once published.
+	 */
+	private static final class Entries {
+
+		final String[] names;
+
+		final int[] ids;
+
+		Entries(String[] names, int[] ids) {
+			this.names = names;
+			this.ids = ids;
+		}
+
+		/**
+		 * @return the position of the entry, or where it would be inserted
+		 */
+		int indexOf(String name, int id) {
+			int low = 0;
+			int high = this.names.length;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				int order = NAME_ORDER.compare(this.names[middle], name);
+				if (order < 0 || (order == 0 && this.ids[middle] < id)) {
+					low = middle + 1;
+				}
+				else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * @return the position of the first entry that follows the given one
+		 */
+		int indexAfter(String name, int id) {
+			int at = indexOf(name, id);
+			if (at < this.names.length && this.ids[at] == id && NAME_ORDER.compare(this.names[at], name) == 0) {
+				at++;
+			}
+			return at;
+		}
+
+		Entries with(String name, int id) {
+			int at = indexOf(name, id);
+			String[] names = new String[this.names.length + 1];
+			int[] ids = new int[this.ids.length + 1];
+			System.arraycopy(this.names, 0, names, 0, at);
+			System.arraycopy(this.ids, 0, ids, 0, at);
+			names[at] = name;
+			ids[at] = id;
+			System.arraycopy(this.names, at, names, at + 1, this.names.length - at);
+			System.arraycopy(this.ids, at, ids, at + 1, this.ids.length - at);
+			return new Entries(names, ids);
+		}
+
+		Entries without(String name, int id) {
+			int at = indexOf(name, id);
+			if (at == this.names.length || this.ids[at] != id || !this.names[at].equals(name)) {
+				return this;
+			}
+			String[] names = Arrays.copyOf(this.names, this.names.length - 1);
+			int[] ids = Arrays.copyOf(this.ids, this.ids.length - 1);
+			System.arraycopy(this.names, at + 1, names, at, this.names.length - at - 1);
+			System.arraycopy(this.ids, at + 1, ids, at, this.ids.length - at - 1);
+			return new Entries(names, ids);
+		}
+
+	}
+
+}
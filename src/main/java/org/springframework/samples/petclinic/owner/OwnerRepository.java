@@ -16,7 +16,9 @@
 package org.springframework.samples.petclinic.owner;
 
 import java.util.Collection;
+import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.Repository;
 import org.springframework.data.repository.query.Param;
@@ -36,15 +38,56 @@ import org.springframework.transaction.annotation.Transactional;
 public interface OwnerRepository extends Repository<Owner, Integer> {
 
 	/**
-	 * Retrieve {@link Owner}s from the data store by last name, returning all owners
-	 * whose last name <i>starts</i> with the given name.
+	 * Retrieve the first owners, ordered by last name and id, whose last name
+	 * <i>starts</i> with the given name. Their pets are not fetched.
 	 * @param lastName Value to search for
-	 * @return a Collection of matching {@link Owner}s (or an empty Collection if none
-	 * found)
+	 * @param page how many owners to return, at most
+	 * @return the owners found
 	 */
-	@Query("SELECT DISTINCT owner FROM Owner owner left join fetch owner.pets WHERE owner.lastName LIKE :lastName%")
+	@Query("SELECT owner FROM Owner owner WHERE owner.lastName LIKE :lastName% ORDER BY owner.lastName, owner.id")
 	@Transactional(readOnly = true)
-	Collection<Owner> findByLastName(@Param("lastName") String lastName);
+	List<Owner> findPageByLastName(@Param("lastName") String lastName, Pageable page);
+
+	/**
+	 * Retrieve the owners that follow the given one in the order of
+	 * {@link #findPageByLastName(String, Pageable)}. Their pets are not fetched.
+	 * @param lastName Value to search for
+	 * @param afterLastName the last name of the owner to continue after
+	 * @param afterId the id of the owner to continue after
+	 * @param page how many owners to return, at most
+	 * @return the owners found, ordered by last name and id
+	 */
+	@Query("SELECT owner FROM Owner owner WHERE owner.lastName LIKE :lastName% AND (owner.lastName > :afterLastName "
+			+ "OR (owner.lastName = :afterLastName AND owner.id > :afterId)) ORDER BY owner.lastName, owner.id")
+	@Transactional(readOnly = true)
+	List<Owner> findPageByLastNameAfter(@Param("lastName") String lastName,
+			@Param("afterLastName") String afterLastName, @Param("afterId") Integer afterId, Pageable page);
+
+	/**
+	 * Retrieve the owners that precede the given one in the order of
+	 * {@link #findPageByLastName(String, Pageable)}. Their pets are not fetched.
+	 * @param lastName Value to search for
+	 * @param beforeLastName the last name of the owner to go back from
+	 * @param beforeId the id of the owner to go back from
+	 * @param page how many owners to return, at most
+	 * @return the owners found, <i>in reverse order</i>, closest to the given one first
+	 */
+	@Query("SELECT owner FROM Owner owner WHERE owner.lastName LIKE :lastName% AND (owner.lastName < :beforeLastName "
+			+ "OR (owner.lastName = :beforeLastName AND owner.id < :beforeId)) "
+			+ "ORDER BY owner.lastName DESC, owner.id DESC")
+	@Transactional(readOnly = true)
+	List<Owner> findPageByLastNameBefore(@Param("lastName") String lastName,
+			@Param("beforeLastName") String beforeLastName, @Param("beforeId") Integer beforeId, Pageable page);
+
+	/**
+	 * Retrieve the owners with the given ids, for a page found by the
+	 * {@link OwnerNameIndex}. Their pets are not fetched.
+	 * @param ids the ids to search for, not empty
+	 * @return the owners found, in no particular order
+	 */
+	@Query("SELECT owner FROM Owner owner WHERE owner.id IN :ids")
+	@Transactional(readOnly = true)
+	List<Owner> findByIdIn(@Param("ids") Collection<Integer> ids);
 
 	/**
 	 * Retrieve an {@link Owner} from the data store by id.
@@ -55,6 +98,39 @@ public interface OwnerRepository extends Repository<Owner, Integer> {
 	@Transactional(readOnly = true)
 	Owner findById(@Param("id") Integer id);
 
+	/**
+	 * Retrieve an owner with its pets, their types and their visits from the data store in
+	 * one query, for display only.
+	 * @param id the id to search for
+	 * @return the owner if found, {@code null} otherwise
+	 */
+	default OwnerDetails findDetailsById(Integer id) {
+		return OwnerDetails.fromRows(findDetailsRowsById(id));
+	}
+
+	/**
+	 * Retrieve an owner with every pet and visit as one row per visit, or per pet if it
+	 * has none, ordered for {@link OwnerDetails#fromRows(List)}.
+	 * @param id the id to search for
+	 * @return the rows, empty if the owner was not found
+	 */
+	@Query("SELECT new org.springframework.samples.petclinic.owner.OwnerDetailsRow(owner.id, owner.firstName, "
+			+ "owner.lastName, owner.address, owner.city, owner.telephone, pet.id, pet.name, pet.birthDate, "
+			+ "petType.name, visit.id, visit.date, visit.description) "
+			+ "FROM Owner owner LEFT JOIN owner.pets pet LEFT JOIN pet.type petType "
+			+ "LEFT JOIN Visit visit ON visit.petId = pet.id "
+			+ "WHERE owner.id = :id ORDER BY pet.name, visit.date DESC")
+	@Transactional(readOnly = true)
+	List<OwnerDetailsRow> findDetailsRowsById(@Param("id") Integer id);
+
+	/**
+	 * Retrieve the id and last name of every owner, for the {@link OwnerNameIndex}.
+	 * @return pairs of id and last name
+	 */
+	@Query("SELECT owner.id, owner.lastName FROM Owner owner")
+	@Transactional(readOnly = true)
+	List<Object[]> findAllLastNames();
+
 	/**
 	 * Save an {@link Owner} to the data store, either inserting or updating it.
 	 * @param owner the {@link Owner} to save
@@ -15,6 +15,7 @@
  */
 package org.springframework.samples.petclinic.owner;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.Query;
@@ -50,10 +51,25 @@ public interface PetRepository extends Repository<Pet, Integer> {
 	@Transactional(readOnly = true)
 	Pet findById(Integer id);
 
+	/**
+	 * Retrieve the {@link Pet}s with the given ids from the data store. Ids that do not
+	 * exist are skipped.
+	 * @param ids the ids to search for
+	 * @return the {@link Pet}s found, in no particular order
+	 */
+	@Transactional(readOnly = true)
+	List<Pet> findByIdIn(Collection<Integer> ids);
+
 	/**
 	 * Save a {@link Pet} to the data store, either inserting or updating it.
 	 * @param pet the {@link Pet} to save
 	 */
 	void save(Pet pet);
 
+	/**
+	 * Save several {@link Pet}s in one transaction, either inserting or updating them.
+	 * @param pets the {@link Pet}s to save
+	 */
+	void saveAll(Iterable<Pet> pets);
+
 }
@@ -0,0 +1,105 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads shared by all caches: one scheduler for timed work such as expiry and
+ * write-behind ticks, and a loader executor for work that blocks on the database such as
+ * refreshes and write-behind flushes.
+ * <p>
+ * On Java 21 and later loaders run on virtual threads, obtained reflectively since the
+ * application is compiled for Java 8. Otherwise they run on a cached pool of daemon
+ * threads. Work submitted to the scheduler must not block.
+ * <p>
+ * The Spring managed instance is shut down with the application context. Caches created
+ * outside of Spring use {@link #common()}, whose daemon threads live as long as the JVM.
+ * Either way a cache only cancels its own tasks when it is destroyed.
+ */
+@Component
+public class CacheExecutors implements DisposableBean {
+
+	private final static Logger log = LoggerFactory.getLogger(CacheExecutors.class);
+
+	private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+	private final ScheduledExecutorService scheduler;
+	private final ExecutorService loader;
+
+	public CacheExecutors() {
+		ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, daemonThreads("cache-scheduler-"));
+		// caches cancel their tasks when destroyed, don't keep them queued until they are due
+		scheduler.setRemoveOnCancelPolicy(true);
+		this.scheduler = scheduler;
+		this.loader = newBlockingExecutor("cache-loader-");
+	}
+
+	/**
+	 * @return executors for caches that are not managed by Spring
+	 */
+	public static CacheExecutors common() {
+		return Common.INSTANCE;
+	}
+
+	public ScheduledExecutorService scheduler() {
+		return scheduler;
+	}
+
+	public ExecutorService loader() {
+		return loader;
+	}
+
+	@Override
+	public void destroy() throws InterruptedException {
+		scheduler.shutdownNow();
+		loader.shutdown();
+		if (!loader.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+			log.warn("Cache loaders did not finish within {}s, interrupting them", SHUTDOWN_TIMEOUT_SECONDS);
+			loader.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return an executor for blocking work, running each task on a virtual thread if
+	 * available and on a cached pool of daemon threads otherwise
+	 */
+	static ExecutorService newBlockingExecutor(String threadNamePrefix) {
+		try {
+			// Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(threadNamePrefix, 1).factory())
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 1L);
+			ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+			Method perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) perTask.invoke(null, factory);
+		} catch (ReflectiveOperationException e) {
+			// before Java 21, or virtual threads disabled
+			return Executors.newCachedThreadPool(daemonThreads(threadNamePrefix));
+		}
+	}
+
+	private static ThreadFactory daemonThreads(String prefix) {
+		AtomicInteger threadNumber = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, prefix + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	private static final class Common {
+
+		static final CacheExecutors INSTANCE = new CacheExecutors();
+	}
+}
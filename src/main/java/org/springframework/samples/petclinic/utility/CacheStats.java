@@ -0,0 +1,79 @@
+package org.springframework.samples.petclinic.utility;
+
+/**
+ * Immutable snapshot of the counters of a {@link TimedCache}.
+ */
+public final class CacheStats {
+
+	private final long hitCount;
+	private final long missCount;
+	private final long loadSuccessCount;
+	private final long loadFailureCount;
+	private final long evictionCount;
+	private final long expirationCount;
+
+	CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount, long evictionCount,
+			long expirationCount) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.loadSuccessCount = loadSuccessCount;
+		this.loadFailureCount = loadFailureCount;
+		this.evictionCount = evictionCount;
+		this.expirationCount = expirationCount;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	public long getRequestCount() {
+		return hitCount + missCount;
+	}
+
+	/**
+	 * @return the ratio of hits to requests, 1.0 if there were no requests
+	 */
+	public double getHitRate() {
+		long requests = getRequestCount();
+		return requests == 0 ? 1.0 : (double) hitCount / requests;
+	}
+
+	/**
+	 * @return the number of loader calls that completed, a bulk load counts once
+	 */
+	public long getLoadSuccessCount() {
+		return loadSuccessCount;
+	}
+
+	/**
+	 * @return the number of loader calls that threw an exception
+	 */
+	public long getLoadFailureCount() {
+		return loadFailureCount;
+	}
+
+	/**
+	 * @return the number of entries evicted because the cache was full
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * @return the number of entries removed because their time to live passed
+	 */
+	public long getExpirationCount() {
+		return expirationCount;
+	}
+
+	@Override
+	public String toString() {
+		return "CacheStats[hits=" + hitCount + ", misses=" + missCount + ", hitRate=" + getHitRate() + ", loads="
+				+ loadSuccessCount + ", loadFailures=" + loadFailureCount + ", evictions=" + evictionCount
+				+ ", expirations=" + expirationCount + "]";
+	}
+}
@@ -0,0 +1,126 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.springframework.samples.petclinic.model.BaseEntity;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * A thread-safe identity map that can be shared between request threads as an
+ * in-process identity cache.
+ * <p>
+ * Ids and entities live in a single {@link ConcurrentHashMap}, so id membership and the
+ * stored entity can never be observed out of step. Lookups take no lock; writes lock only
+ * the bin of the id being written. Iteration is weakly consistent and never throws
+ * {@link java.util.ConcurrentModificationException}.
+ */
+public class ConcurrentIdentityMap<Entity extends BaseEntity> extends AbstractCollection<Entity> {
+
+	private final ConcurrentHashMap<Integer, Entity> entities;
+
+	public ConcurrentIdentityMap() {
+		this.entities = new ConcurrentHashMap<>();
+	}
+
+	public ConcurrentIdentityMap(int expectedSize) {
+		this.entities = new ConcurrentHashMap<>(expectedSize);
+	}
+
+	/**
+	 * @return the entity stored under the given id, or {@code null} if there is none
+	 */
+	public Entity get(int id) {
+		return entities.get(id);
+	}
+
+	public boolean containsId(int id) {
+		return entities.containsKey(id);
+	}
+
+	/**
+	 * Returns the entity stored under the given id, loading and storing it atomically if
+	 * it is absent. Concurrent callers for the same id wait for a single load. If the
+	 * loader returns {@code null} nothing is stored.
+	 */
+	public Entity computeIfAbsent(int id, IntFunction<? extends Entity> loader) {
+		return entities.computeIfAbsent(id, key -> loader.apply(key));
+	}
+
+	/**
+	 * Adds the entity unless one with the same id is already present.
+	 * @return the entity already present, or {@code null} if the given one was added
+	 */
+	public Entity addIfAbsent(Entity entity) {
+		return entities.putIfAbsent(idOf(entity), entity);
+	}
+
+	@Override
+	public int size() {
+		return entities.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return entities.isEmpty();
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if (o instanceof BaseEntity) {
+			Integer id = ((BaseEntity) o).getId();
+			return id != null && entities.containsKey(id);
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * Adds the entity, atomically replacing any entity with the same id.
+	 */
+	@Override
+	public boolean add(Entity entity) {
+		entities.put(idOf(entity), entity);
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object object) {
+		if (object instanceof BaseEntity) {
+			Integer id = ((BaseEntity) object).getId();
+			return id != null && entities.remove(id) != null;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean retainAll(Collection<?> collection) {
+		return entities.values().retainAll(collection);
+	}
+
+	@Override
+	public void clear() {
+		entities.clear();
+	}
+
+	@Override
+	public Iterator<Entity> iterator() {
+		return entities.values().iterator();
+	}
+
+	@Override
+	public Spliterator<Entity> spliterator() {
+		return entities.values().spliterator();
+	}
+
+	private static int idOf(BaseEntity entity) {
+		Integer id = entity.getId();
+		if (id == null) {
+			throw new IllegalArgumentException("ConcurrentIdentityMap only holds persisted entities, id is null: " + entity);
+		}
+		return id;
+	}
+}
@@ -0,0 +1,118 @@
+package org.springframework.samples.petclinic.utility;
+
+/**
+ * A 4-bit count-min sketch that estimates how often a key has been seen recently. It is
+ * the TinyLFU admission filter of {@link TimedCache}: a new entry only displaces an
+ * existing one if it has been requested more often.
+ * <p>
+ * Sixteen counters are packed into each {@code long}. Once the number of increments
+ * reaches ten times the table size every counter is halved, so old popularity decays.
+ * The table starts small and grows with the number of entries, up to the maximum size of
+ * the cache but never beyond {@link #MAXIMUM_TABLE_SIZE}, so a generous maximum does not
+ * allocate its sketch up front. Growing starts the counts over.
+ * Not thread-safe, callers hold the cache's eviction lock.
+ */
+final class FrequencySketch {
+
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+			0xcbf29ce484222325L };
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	private static final int INITIAL_TABLE_SIZE = 16;
+
+	/** 8 MB of counters, enough for caches of millions of entries */
+	static final int MAXIMUM_TABLE_SIZE = 1 << 20;
+
+	private final int maximumTableSize;
+	private long[] table;
+	private int tableMask;
+	private int sampleSize;
+	private int additions;
+
+	FrequencySketch(long maximumSize) {
+		maximumTableSize = tableSizeFor(maximumSize);
+		allocate(Math.min(INITIAL_TABLE_SIZE, maximumTableSize));
+	}
+
+	/**
+	 * Grows the table, if it is still allowed to, once there are more entries than
+	 * {@code long}s in it.
+	 */
+	void ensureCapacity(long size) {
+		if (size <= table.length || table.length == maximumTableSize) {
+			return;
+		}
+		allocate(Math.min(tableSizeFor(size), maximumTableSize));
+	}
+
+	int tableSize() {
+		return table.length;
+	}
+
+	private void allocate(int tableSize) {
+		table = new long[tableSize];
+		tableMask = tableSize - 1;
+		sampleSize = 10 * tableSize;
+		additions = 0;
+	}
+
+	private static int tableSizeFor(long size) {
+		int bounded = (int) Math.min(Math.max(size, INITIAL_TABLE_SIZE), MAXIMUM_TABLE_SIZE);
+		return Integer.highestOneBit(bounded - 1) << 1;
+	}
+
+	/**
+	 * @return the estimated number of occurrences of the key, at most 15
+	 */
+	int frequency(int key) {
+		int hash = spread(key);
+		int frequency = Integer.MAX_VALUE;
+		for (int i = 0; i < 4; i++) {
+			int index = indexOf(hash, i);
+			int offset = counterOffset(hash, i);
+			frequency = Math.min(frequency, (int) ((table[index] >>> offset) & 0xfL));
+		}
+		return frequency;
+	}
+
+	void increment(int key) {
+		int hash = spread(key);
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			int index = indexOf(hash, i);
+			int offset = counterOffset(hash, i);
+			if (((table[index] >>> offset) & 0xfL) != 0xfL) {
+				table[index] += 1L << offset;
+				added = true;
+			}
+		}
+		if (added && ++additions == sampleSize) {
+			reset();
+		}
+	}
+
+	/** halves every counter */
+	private void reset() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		additions >>>= 1;
+	}
+
+	private int indexOf(int hash, int depth) {
+		long h = (hash + SEEDS[depth]) * SEEDS[depth];
+		h += h >>> 32;
+		return (int) h & tableMask;
+	}
+
+	/** bit offset of the depth's counter, each depth uses a different nibble group */
+	private static int counterOffset(int hash, int depth) {
+		int nibble = (depth << 2) + ((hash >>> (depth << 3)) & 3);
+		return nibble << 2;
+	}
+
+	private static int spread(int key) {
+		int hash = key * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -2,61 +2,151 @@ package org.springframework.samples.petclinic.utility;
 import org.springframework.samples.petclinic.model.BaseEntity;
 
 import java.util.*;
-import java.util.function.Supplier;
-import java.util.stream.Collector;
+import java.util.function.Consumer;
 
 /**
  * This is a utility class to provide a sortable map
  * for more information see https://docs.oracle.com/javase/8/docs/api/java/util/Collection.html
+ * <p>
+ * Entities are kept in a dense array and indexed by an open-addressing
+ * {@code int -> slot} table (linear probing, backward-shift deletion), so add, replace,
+ * remove and contains run in constant time without boxing ids. Removal moves the last
+ * entity into the freed slot. Only persisted entities (with a non-null id) can be added.
+ * <p>
+ * This class is not thread-safe, see {@link ConcurrentIdentityMap} for a shared variant.
  */
 public class IdentityMap<Entity extends BaseEntity> implements Collection<Entity> {
 
-	private ArrayList<Entity> entities = new ArrayList<>();
-	private Set<Integer> ids = new HashSet<>();
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final int EMPTY = -1;
 
+	/** open-addressing table: entity id per bucket */
+	private int[] keys;
+	/** open-addressing table: dense slot per bucket, {@link #EMPTY} if unused */
+	private int[] slots;
+	private int mask;
+
+	/** dense storage, entities[0..size) are live */
+	private BaseEntity[] entities;
+	/** id of the entity stored in each dense slot */
+	private int[] entityIds;
+	private int size;
+	/** structural modification count, checked by iterators and spliterators */
+	private int modCount;
+
+	public IdentityMap() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public IdentityMap(int expectedSize) {
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("expectedSize must not be negative: " + expectedSize);
+		}
+		int capacity = Math.max(expectedSize, 2);
+		entities = new BaseEntity[capacity];
+		entityIds = new int[capacity];
+		allocateTable(tableSizeFor(capacity));
+	}
 
 	@Override
 	public int size() {
-		return ids.size();
+		return size;
 	}
 
 	@Override
 	public boolean isEmpty() {
-		return ids.isEmpty();
+		return size == 0;
 	}
 
 	@Override
 	public boolean contains(Object o) {
 		if(o instanceof BaseEntity) {
-			return ids.contains(((BaseEntity) o).getId());
+			Integer id = ((BaseEntity) o).getId();
+			return id != null && findBucket(id) >= 0;
 		} else {
 			return false;
 		}
 	}
 
+	/**
+	 * @return the entity stored under the given id, or {@code null} if there is none
+	 */
+	@SuppressWarnings("unchecked")
+	public Entity get(int id) {
+		int bucket = findBucket(id);
+		return bucket < 0 ? null : (Entity) entities[slots[bucket]];
+	}
+
+	public boolean containsId(int id) {
+		return findBucket(id) >= 0;
+	}
+
+	/**
+	 * Returns a fail-fast iterator in slot order. {@link Iterator#remove()} is supported.
+	 */
 	@Override
 	public Iterator<Entity> iterator() {
-		throw new UnsupportedOperationException();
+		return new Itr();
+	}
+
+	/**
+	 * Returns a fail-fast spliterator that splits the slot range in balanced halves.
+	 */
+	@Override
+	public Spliterator<Entity> spliterator() {
+		return new EntitySpliterator(0, size, modCount);
 	}
 
 	@Override
 	public Object[] toArray() {
-		throw new UnsupportedOperationException();
+		return Arrays.copyOf(entities, size, Object[].class);
 	}
 
 	@Override
+	@SuppressWarnings("unchecked")
 	public <T> T[] toArray(T[] ts) {
-		throw new UnsupportedOperationException();
+		if (ts.length < size) {
+			return (T[]) Arrays.copyOf(entities, size, ts.getClass());
+		}
+		System.arraycopy(entities, 0, ts, 0, size);
+		if (ts.length > size) {
+			ts[size] = null;
+		}
+		return ts;
 	}
 
+	/**
+	 * Adds the entity, replacing (in place) any entity with the same id.
+	 */
 	@Override
 	public boolean add(Entity entity) {
-		if(!ids.contains(entity)) {
-			ids.add(entity.getId());
-			entities.add(entity);
-		} else {
-			entities.removeIf(entity::sameId);
-			this.add(entity);
+		int id = idOf(entity);
+		int bucket = bucketOf(id);
+		while (slots[bucket] != EMPTY) {
+			if (keys[bucket] == id) {
+				int slot = slots[bucket];
+				@SuppressWarnings("unchecked")
+				Entity replaced = (Entity) entities[slot];
+				entities[slot] = entity;
+				entityReplaced(replaced, entity);
+				return true;
+			}
+			bucket = (bucket + 1) & mask;
+		}
+		if (size == entities.length) {
+			int capacity = entities.length << 1;
+			entities = Arrays.copyOf(entities, capacity);
+			entityIds = Arrays.copyOf(entityIds, capacity);
+		}
+		keys[bucket] = id;
+		slots[bucket] = size;
+		entities[size] = entity;
+		entityIds[size] = id;
+		size++;
+		modCount++;
+		entityAdded(entity);
+		if (size > (slots.length >> 1) + (slots.length >> 2)) {
+			rehash(slots.length << 1);
 		}
 		return true;
 	}
@@ -64,8 +154,13 @@ public class IdentityMap<Entity extends BaseEntity> implements Collection<Entity
 	@Override
 	public boolean remove(Object object) {
 		if(object instanceof BaseEntity) {
-			if(ids.remove(((BaseEntity) object).getId())) {
-				return entities.removeIf(((BaseEntity) object)::sameId);
+			Integer id = ((BaseEntity) object).getId();
+			if (id != null) {
+				int bucket = findBucket(id);
+				if (bucket >= 0) {
+					removeAt(bucket);
+					return true;
+				}
 			}
 		}
 		return false;
@@ -100,16 +195,250 @@ public class IdentityMap<Entity extends BaseEntity> implements Collection<Entity
 
 	@Override
 	public boolean retainAll(Collection<?> collection) {
-		throw new UnsupportedOperationException();
+		boolean collectionChaged = false;
+		// walk backwards so the entity moved into a freed slot has already been checked
+		for (int slot = size - 1; slot >= 0; slot--) {
+			if (!collection.contains(entities[slot])) {
+				removeAt(findBucket(entityIds[slot]));
+				collectionChaged = true;
+			}
+		}
+		return collectionChaged;
 	}
 
 	@Override
 	public void clear() {
-		ids.clear();
-		entities.clear();
+		modCount++;
+		Arrays.fill(slots, EMPTY);
+		Arrays.fill(entities, 0, size, null);
+		size = 0;
+		entitiesCleared();
 	}
 
+	@SuppressWarnings("unchecked")
 	public void sort(Comparator<Entity> comparator) {
-		entities.sort(comparator);
+		Arrays.sort((Entity[]) (Object[]) entities, 0, size, comparator);
+		modCount++;
+		for (int slot = 0; slot < size; slot++) {
+			entityIds[slot] = entities[slot].getId();
+		}
+		rehash(slots.length);
+	}
+
+	/**
+	 * Called after a new id has been added.
+	 */
+	protected void entityAdded(Entity entity) {
+	}
+
+	/**
+	 * Called after an entity has been replaced by another one with the same id.
+	 */
+	protected void entityReplaced(Entity replaced, Entity entity) {
+	}
+
+	/**
+	 * Called after an entity has been removed.
+	 */
+	protected void entityRemoved(Entity entity) {
+	}
+
+	/**
+	 * Called after {@link #clear()}.
+	 */
+	protected void entitiesCleared() {
+	}
+
+	private void removeAt(int bucket) {
+		int slot = slots[bucket];
+		@SuppressWarnings("unchecked")
+		Entity removed = (Entity) entities[slot];
+		int last = --size;
+		modCount++;
+		if (slot != last) {
+			// keep the entity array dense by moving the last entity into the hole
+			entities[slot] = entities[last];
+			entityIds[slot] = entityIds[last];
+			slots[findBucket(entityIds[slot])] = slot;
+		}
+		entities[last] = null;
+		deleteBucket(bucket);
+		entityRemoved(removed);
+	}
+
+	/**
+	 * Backward-shift deletion: pulls later members of the probe chain into the hole so
+	 * lookups never need tombstones.
+	 */
+	private void deleteBucket(int hole) {
+		int bucket = hole;
+		while (true) {
+			bucket = (bucket + 1) & mask;
+			if (slots[bucket] == EMPTY) {
+				break;
+			}
+			int home = bucketOf(keys[bucket]);
+			if (((bucket - home) & mask) >= ((bucket - hole) & mask)) {
+				keys[hole] = keys[bucket];
+				slots[hole] = slots[bucket];
+				hole = bucket;
+			}
+		}
+		slots[hole] = EMPTY;
+	}
+
+	private int findBucket(int id) {
+		int bucket = bucketOf(id);
+		while (slots[bucket] != EMPTY) {
+			if (keys[bucket] == id) {
+				return bucket;
+			}
+			bucket = (bucket + 1) & mask;
+		}
+		return -1;
+	}
+
+	private int bucketOf(int id) {
+		int hash = id * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	private void rehash(int tableSize) {
+		allocateTable(tableSize);
+		for (int slot = 0; slot < size; slot++) {
+			int bucket = bucketOf(entityIds[slot]);
+			while (slots[bucket] != EMPTY) {
+				bucket = (bucket + 1) & mask;
+			}
+			keys[bucket] = entityIds[slot];
+			slots[bucket] = slot;
+		}
+	}
+
+	private void allocateTable(int tableSize) {
+		keys = new int[tableSize];
+		slots = new int[tableSize];
+		Arrays.fill(slots, EMPTY);
+		mask = tableSize - 1;
+	}
+
+	private static int tableSizeFor(int expectedSize) {
+		// keep the load factor at or below 0.75
+		int needed = (int) Math.min((long) expectedSize * 4 / 3 + 1, 1 << 30);
+		int tableSize = Integer.highestOneBit(needed);
+		return tableSize < needed ? tableSize << 1 : tableSize;
+	}
+
+	private class Itr implements Iterator<Entity> {
+
+		private int cursor;
+		private int lastReturned = -1;
+		private int expectedModCount = modCount;
+
+		@Override
+		public boolean hasNext() {
+			return cursor < size;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Entity next() {
+			checkForComodification();
+			if (cursor >= size) {
+				throw new NoSuchElementException();
+			}
+			lastReturned = cursor++;
+			return (Entity) entities[lastReturned];
+		}
+
+		@Override
+		public void remove() {
+			if (lastReturned < 0) {
+				throw new IllegalStateException();
+			}
+			checkForComodification();
+			removeAt(findBucket(entityIds[lastReturned]));
+			// the last entity was moved into the freed slot, visit it next
+			cursor = lastReturned;
+			lastReturned = -1;
+			expectedModCount = modCount;
+		}
+
+		private void checkForComodification() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+	}
+
+	private class EntitySpliterator implements Spliterator<Entity> {
+
+		private int index;
+		private final int fence;
+		private final int expectedModCount;
+
+		EntitySpliterator(int origin, int fence, int expectedModCount) {
+			this.index = origin;
+			this.fence = fence;
+			this.expectedModCount = expectedModCount;
+		}
+
+		@Override
+		public Spliterator<Entity> trySplit() {
+			int lo = index;
+			int mid = (lo + fence) >>> 1;
+			if (lo >= mid) {
+				return null;
+			}
+			index = mid;
+			return new EntitySpliterator(lo, mid, expectedModCount);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public boolean tryAdvance(Consumer<? super Entity> action) {
+			Objects.requireNonNull(action);
+			if (index >= fence) {
+				return false;
+			}
+			action.accept((Entity) entities[index++]);
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			return true;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void forEachRemaining(Consumer<? super Entity> action) {
+			Objects.requireNonNull(action);
+			BaseEntity[] snapshot = entities;
+			int hi = fence;
+			for (int i = index; i < hi; i++) {
+				action.accept((Entity) snapshot[i]);
+			}
+			index = hi;
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+
+		@Override
+		public long estimateSize() {
+			return fence - index;
+		}
+
+		@Override
+		public int characteristics() {
+			return Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.DISTINCT | Spliterator.NONNULL;
+		}
+	}
+
+	private static int idOf(BaseEntity entity) {
+		Integer id = entity.getId();
+		if (id == null) {
+			throw new IllegalArgumentException("IdentityMap only holds persisted entities, id is null: " + entity);
+		}
+		return id;
 	}
 }
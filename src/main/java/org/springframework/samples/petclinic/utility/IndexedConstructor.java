@@ -0,0 +1,21 @@
+package org.springframework.samples.petclinic.utility;
+
+import java.util.function.Function;
+
+/**
+ * A constructor recorded at build time by the
+ * {@link org.springframework.samples.petclinic.utility.processor.SimpleDIIndexProcessor},
+ * so that {@link SimpleDIContainer} can call it without reflection.
+ */
+final class IndexedConstructor {
+
+	final Class<?>[] parameterTypes;
+
+	/** calls the constructor with arguments of the parameter types */
+	final Function<Object[], Object> factory;
+
+	IndexedConstructor(Class<?>[] parameterTypes, Function<Object[], Object> factory) {
+		this.parameterTypes = parameterTypes;
+		this.factory = factory;
+	}
+}
@@ -0,0 +1,105 @@
+package org.springframework.samples.petclinic.utility;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keys that a {@link TimedCache} loaded and found no value for, e.g. ids of deleted or
+ * made-up pets, so repeated lookups of them do not reach the database.
+ * <p>
+ * Entries expire a fixed time after they were added and at most a configured number of
+ * keys is kept, the oldest going first. Since the time to live is fixed, insertion order
+ * is also expiry order. Lookups are lock-free, adding and removing ids takes a lock.
+ */
+final class NegativeCache<K> {
+
+	private final long expiryNanos;
+	private final int maximumSize;
+
+	/** key to the time it was found missing */
+	private final ConcurrentHashMap<K, Long> missing = new ConcurrentHashMap<>();
+
+	/** guards {@link #insertionOrder} */
+	private final ReentrantLock lock = new ReentrantLock();
+	/** may hold keys that were removed or re-added since, it is never shorter than the map */
+	private final ArrayDeque<K> insertionOrder = new ArrayDeque<>();
+
+	NegativeCache(long expiryNanos, int maximumSize) {
+		if (expiryNanos <= 0 || maximumSize <= 0) {
+			throw new IllegalArgumentException(
+					"negative caching needs a positive expiry and size: " + expiryNanos + "ns, " + maximumSize);
+		}
+		this.expiryNanos = expiryNanos;
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * @return whether the key was recently found missing
+	 */
+	boolean contains(K key, long now) {
+		Long since = missing.get(key);
+		if (since == null) {
+			return false;
+		}
+		if (now - since < expiryNanos) {
+			return true;
+		}
+		missing.remove(key, since);
+		return false;
+	}
+
+	void add(K key, long now) {
+		lock.lock();
+		try {
+			missing.put(key, now);
+			insertionOrder.addLast(key);
+			while (insertionOrder.size() > maximumSize) {
+				// a stale duplicate may take a younger entry with it, which only costs a query
+				missing.remove(insertionOrder.pollFirst());
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	void remove(K key) {
+		missing.remove(key);
+	}
+
+	void clear() {
+		lock.lock();
+		try {
+			missing.clear();
+			insertionOrder.clear();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Drops expired keys from the head of the insertion order.
+	 */
+	void cleanUp(long now) {
+		lock.lock();
+		try {
+			K key;
+			while ((key = insertionOrder.peekFirst()) != null) {
+				Long since = missing.get(key);
+				if (since != null && now - since < expiryNanos) {
+					return;
+				}
+				insertionOrder.pollFirst();
+				if (since != null) {
+					missing.remove(key, since);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	int size() {
+		return missing.size();
+	}
+}
@@ -1,99 +1,245 @@
 package org.springframework.samples.petclinic.utility;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.samples.petclinic.owner.Pet;
 import org.springframework.samples.petclinic.owner.PetRepository;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.text.SimpleDateFormat;
-	import java.util.Date;
-	import java.util.Map;
-	import java.util.concurrent.ConcurrentHashMap;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 /**
+ * Cache for pets, read through from the {@link PetRepository}. Expiry, size bounds,
+ * single-flight and bulk loading, negative caching, refresh-ahead and statistics are
+ * provided by its {@link TimedCache} engine; see there for how they work. When created
+ * by Spring the engine is registered with the {@link TimedCacheManager} as the
+ * {@code pets} cache, so {@code @Cacheable("pets")} methods share its entries and it
+ * reports the same metrics as every other cache of the application.
+ * <p>
+ * {@link #getAll(Collection)} loads the misses of many pets with {@code IN} queries of at
+ * most {@value #MAX_IDS_PER_QUERY} ids.
+ * <p>
+ * {@link #save(Pet)} keeps the cache coherent with the repository: once the surrounding
+ * transaction commits (or right away if there is none) the saved pet is either written
+ * into the cache or its entry is invalidated, depending on the {@link WriteMode}. A load
+ * that was already running when the write happened does not cache its result.
+ * <p>
+ * In {@link WriteMode#WRITE_BEHIND} mode updates of existing pets are cached right away
+ * and written later, coalesced and batched, by a {@link WriteBehindQueue}. New pets are
+ * still inserted synchronously since their id is generated by the database. A pet whose
+ * write is dropped after failing is invalidated, so the next read sees the repository.
  *
  * @author Vivekananthan M
  */
 @Component
-public class PetTimedCache {
+public class PetTimedCache implements DisposableBean {
 
-	private final static Logger log = LoggerFactory.getLogger(PetTimedCache.class);
+	/** ids per {@code IN} query, well below the bind parameter limits of common databases */
+	static final int MAX_IDS_PER_QUERY = 500;
+
+	private final TimedCache<Integer, Pet> cache;
 	private final PetRepository repository;
 
-	private Map<Integer, Long> timeMap = new ConcurrentHashMap<Integer, Long>();
-	private Map<Integer, Pet> actualMap = new ConcurrentHashMap<Integer, Pet>();
+	/** kept in fields so that hits do not allocate a lambda */
+	private final Function<Integer, Pet> loader = this::fetch;
+	private final Function<List<Integer>, Map<Integer, Pet>> bulkLoader = this::fetchAll;
 
-	private long expiryInMillis = 10000;
-	private static final SimpleDateFormat SIMPLE_DATE_FORMAT = new SimpleDateFormat("hh:mm:ss:SSS");
+	private final WriteMode writeMode;
+	private final WriteBehindQueue writeBehind;
+	private final boolean flushOnShutdown;
 
-	@Autowired
 	public PetTimedCache(PetRepository repository) {
-		this.repository = repository;
-		initialize();
+		this(new PetTimedCacheProperties(), repository);
 	}
 
 	public PetTimedCache(long expiryInMillis, PetRepository repository) {
-		this.expiryInMillis = expiryInMillis;
-		this.repository = repository;
-		initialize();
+		this(expiryInMillis, new PetTimedCacheProperties().getMaximumSize(), repository);
+	}
+
+	public PetTimedCache(long expiryInMillis, long maximumSize, PetRepository repository) {
+		this(properties(expiryInMillis, maximumSize), repository);
+	}
+
+	public PetTimedCache(PetTimedCacheProperties properties, PetRepository repository) {
+		this(properties, repository, CacheExecutors.common());
+	}
+
+	public PetTimedCache(PetTimedCacheProperties properties, PetRepository repository, Ticker ticker) {
+		this(properties, repository, CacheExecutors.common(), ticker);
+	}
+
+	public PetTimedCache(PetTimedCacheProperties properties, PetRepository repository, CacheExecutors executors) {
+		this(properties, repository, executors, Ticker.system());
+	}
+
+	public PetTimedCache(PetTimedCacheProperties properties, PetRepository repository, CacheExecutors executors,
+			Ticker ticker) {
+		this(new TimedCache<>("pets", properties, executors, ticker), properties, repository, executors);
 	}
 
-	void initialize() {
-		new CleanerThread().start();
+	@Autowired
+	public PetTimedCache(PetTimedCacheProperties properties, PetRepository repository, TimedCacheManager manager) {
+		this(manager.createCache("pets", properties), properties, repository, manager.getExecutors());
+	}
+
+	private PetTimedCache(TimedCache<Integer, Pet> cache, PetTimedCacheProperties properties,
+			PetRepository repository, CacheExecutors executors) {
+		this.cache = cache;
+		this.repository = repository;
+		this.writeMode = properties.getWriteMode();
+		this.writeBehind = writeMode == WriteMode.WRITE_BEHIND
+				? new WriteBehindQueue(repository, executors.scheduler(), executors.loader(),
+						properties.getWriteBehindBatchSize(), properties.getWriteBehindMaxPending(),
+						properties.getWriteBehindDelay().toMillis(), this::invalidate)
+				: null;
+		this.flushOnShutdown = properties.isWriteBehindFlushOnShutdown();
 	}
 
-	private Pet put(Pet pet) {
-		Integer key = pet.getId();
-		Date date = new Date();
-		timeMap.put(key, date.getTime());
-		log.info("Inserting : " + SIMPLE_DATE_FORMAT.format(date) + " : " + key + " : " + pet);
-		Pet returnVal = actualMap.put(key, pet);
-		return returnVal;
+	private static PetTimedCacheProperties properties(long expiryInMillis, long maximumSize) {
+		PetTimedCacheProperties properties = new PetTimedCacheProperties();
+		properties.setExpiry(Duration.ofMillis(expiryInMillis));
+		properties.setMaximumSize(maximumSize);
+		return properties;
 	}
 
 	public Pet get(Integer key) {
-		if(actualMap.containsKey(key)) {
-			log.info("cache hit");
-			return actualMap.get(key);
-		} else {
-			log.info("cache miss");
-			Pet pet = repository.findById(key);
-			if(pet != null) {
-				put(pet);
-			}
-			return pet;
-		}
+		return cache.get(key, loader);
 	}
 
+	/**
+	 * Returns the pets with the given ids. Cached pets are served from memory, all others
+	 * are loaded with as few {@code IN} queries as possible and cached. Ids without a pet
+	 * are left out of the result and negatively cached.
+	 * @return the pets found, keyed by id, in the order of {@code ids}
+	 */
+	public Map<Integer, Pet> getAll(Collection<Integer> ids) {
+		return cache.getAll(ids, bulkLoader);
+	}
+
+	/**
+	 * Saves the pet and, after the transaction commits, updates or invalidates its
+	 * cache entry according to the configured {@link WriteMode}.
+	 */
 	public void save(Pet pet) {
+		if (writeBehind != null && !pet.isNew()) {
+			afterWrite(pet);
+			writeBehind.enqueue(pet);
+			return;
+		}
 		repository.save(pet);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					afterWrite(pet);
+				}
+			});
+		} else {
+			afterWrite(pet);
+		}
 	}
 
-	class CleanerThread extends Thread {
-		@Override
-		public void run() {
-			log.info("Initiating Cleaner Thread...");
-			while (true) {
-				cleanMap();
-				try {
-					Thread.sleep(expiryInMillis / 2);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
+	private void afterWrite(Pet pet) {
+		// both supersede loads that started before the write
+		if (writeMode != WriteMode.INVALIDATE) {
+			cache.put(pet.getId(), pet);
+		} else {
+			cache.invalidate(pet.getId());
 		}
+	}
+
+	/**
+	 * Removes the pet, or the knowledge that it is missing, from the cache.
+	 */
+	public void invalidate(Integer key) {
+		cache.invalidate(key);
+	}
+
+	/**
+	 * Reads the pet from the write-behind queue if it has unwritten changes, otherwise
+	 * from the repository.
+	 */
+	private Pet fetch(Integer key) {
+		Pet pending = writeBehind == null ? null : writeBehind.pending(key);
+		return pending != null ? pending : repository.findById(key);
+	}
 
-		private void cleanMap() {
-			long currentTime = new Date().getTime();
-			for (Integer key : timeMap.keySet()) {
-				if (currentTime > (timeMap.get(key) + expiryInMillis)) {
-					Pet value = actualMap.remove(key);
-					timeMap.remove(key);
-					log.info("Removing : " + SIMPLE_DATE_FORMAT.format(new Date()) + " : " + key + " : " + value);
+	private Map<Integer, Pet> fetchAll(List<Integer> ids) {
+		Map<Integer, Pet> found = new HashMap<>();
+		for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+			List<Integer> chunk = ids.subList(from, Math.min(from + MAX_IDS_PER_QUERY, ids.size()));
+			for (Pet pet : repository.findByIdIn(chunk)) {
+				found.put(pet.getId(), pet);
+			}
+		}
+		if (writeBehind != null) {
+			for (Integer id : ids) {
+				Pet pending = writeBehind.pending(id);
+				if (pending != null) {
+					found.put(id, pending);
 				}
 			}
 		}
+		return found;
+	}
+
+	/**
+	 * Writes all pets pending in write-behind mode.
+	 */
+	public void flush() {
+		if (writeBehind != null) {
+			writeBehind.flush();
+		}
+	}
+
+	/**
+	 * Stops expiring entries and, in write-behind mode, writes or discards the pending
+	 * pets. The shared executors are left running.
+	 */
+	@Override
+	public void destroy() {
+		cache.close();
+		if (writeBehind != null) {
+			writeBehind.close(flushOnShutdown);
+		}
+	}
+
+	/**
+	 * @return the number of entries currently held, including expired entries that have
+	 * not been cleaned up yet
+	 */
+	public long size() {
+		return cache.size();
+	}
+
+	public CacheStats stats() {
+		return cache.stats();
+	}
+
+	long cleanUp() {
+		return cache.cleanUp();
+	}
+
+	/**
+	 * What {@link #save(Pet)} does to the cache once the write has committed.
+	 */
+	public enum WriteMode {
+
+		/** cache the saved pet */
+		WRITE_THROUGH,
+
+		/** drop the cached entry, the next read loads it from the repository */
+		INVALIDATE,
+
+		/** cache the saved pet and write it to the repository later, in batches */
+		WRITE_BEHIND
+
 	}
 }
@@ -0,0 +1,84 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings of {@link PetTimedCache}, bound from {@code petclinic.cache.pets.*}: those of
+ * its {@link TimedCache} plus how saved pets are written.
+ */
+@Component
+@ConfigurationProperties(prefix = "petclinic.cache.pets")
+public class PetTimedCacheProperties extends TimedCacheProperties {
+
+	/**
+	 * Whether a saved pet is written into the cache or its entry invalidated once the
+	 * write has committed.
+	 */
+	private PetTimedCache.WriteMode writeMode = PetTimedCache.WriteMode.INVALIDATE;
+
+	/**
+	 * In write-behind mode, number of pets written per batch. A flush starts as soon as
+	 * this many pets are pending.
+	 */
+	private int writeBehindBatchSize = 50;
+
+	/**
+	 * In write-behind mode, maximum time a pet waits before it is written.
+	 */
+	private Duration writeBehindDelay = Duration.ofSeconds(1);
+
+	/**
+	 * In write-behind mode, maximum number of pending pets. A save that fills the queue
+	 * flushes it on the saving thread.
+	 */
+	private int writeBehindMaxPending = 10_000;
+
+	/**
+	 * In write-behind mode, whether pending pets are written when the application shuts
+	 * down. If disabled they are discarded.
+	 */
+	private boolean writeBehindFlushOnShutdown = true;
+
+	public PetTimedCache.WriteMode getWriteMode() {
+		return writeMode;
+	}
+
+	public void setWriteMode(PetTimedCache.WriteMode writeMode) {
+		this.writeMode = writeMode;
+	}
+
+	public int getWriteBehindBatchSize() {
+		return writeBehindBatchSize;
+	}
+
+	public void setWriteBehindBatchSize(int writeBehindBatchSize) {
+		this.writeBehindBatchSize = writeBehindBatchSize;
+	}
+
+	public Duration getWriteBehindDelay() {
+		return writeBehindDelay;
+	}
+
+	public void setWriteBehindDelay(Duration writeBehindDelay) {
+		this.writeBehindDelay = writeBehindDelay;
+	}
+
+	public int getWriteBehindMaxPending() {
+		return writeBehindMaxPending;
+	}
+
+	public void setWriteBehindMaxPending(int writeBehindMaxPending) {
+		this.writeBehindMaxPending = writeBehindMaxPending;
+	}
+
+	public boolean isWriteBehindFlushOnShutdown() {
+		return writeBehindFlushOnShutdown;
+	}
+
+	public void setWriteBehindFlushOnShutdown(boolean writeBehindFlushOnShutdown) {
+		this.writeBehindFlushOnShutdown = writeBehindFlushOnShutdown;
+	}
+}
@@ -1,8 +1,6 @@
 package org.springframework.samples.petclinic.utility;
 
-import org.springframework.samples.petclinic.owner.PetRepository;
-
-import java.util.HashMap;
+import java.time.Duration;
 import java.util.concurrent.Callable;
 
 /**
@@ -10,14 +8,72 @@ import java.util.concurrent.Callable;
  */
 public abstract class SimpleDI {
 
+	/**
+	 * @return the application wide container, see {@link SimpleDIContainer}
+	 */
 	public static SimpleDI getDIContainer() throws Exception {
-		// todo return the singleton instance of your implementation of dependency injection container
-		throw new Exception("not implemented");
+		return SimpleDIContainer.INSTANCE;
 	}
 
 	public abstract void provideByInstance(Class<?> typeClass, Object instanceOfType);
 
+	/**
+	 * Registers a constructor function for {@link Lifetime#SINGLETON singletons}.
+	 */
 	public abstract void provideByAConstructorFunction(Class<?> typeClass, Callable<Object> providerFunction);
 
+	public abstract void provideByAConstructorFunction(Class<?> typeClass, Lifetime lifetime,
+			Callable<Object> providerFunction);
+
 	public abstract Object getInstanceOf(Class<?> requiredType) throws Exception;
+
+	/**
+	 * Creates every registered singleton that does not exist yet, and the classes their
+	 * constructors need, instead of waiting for their first use. Singletons that do not
+	 * depend on each other are created concurrently.
+	 * @throws java.util.concurrent.TimeoutException if they are not all created within the
+	 * timeout
+	 */
+	public abstract void initializeAll(Duration timeout) throws Exception;
+
+	/**
+	 * Opens a scope for {@link Lifetime#SCOPED} types on the current thread, to be closed
+	 * on the same thread once the unit of work is done. A scope opened while another one
+	 * is open hides it until closed.
+	 */
+	public abstract Scope openScope();
+
+	/**
+	 * How long the instance created by a constructor function is used.
+	 */
+	public enum Lifetime {
+
+		/** one instance for the container */
+		SINGLETON,
+
+		/** a new instance for every lookup */
+		PROTOTYPE,
+
+		/** one instance per thread, for as long as the thread lives */
+		THREAD,
+
+		/** one instance per {@link Scope}, closed with it if it is {@link AutoCloseable} */
+		SCOPED
+
+	}
+
+	/**
+	 * A unit of work, such as a request or a task, that {@link Lifetime#SCOPED} instances
+	 * live in.
+	 */
+	public interface Scope extends AutoCloseable {
+
+		/**
+		 * Closes the instances created in the scope, most recent first, and makes the
+		 * enclosing scope current again.
+		 */
+		@Override
+		void close();
+
+	}
 }
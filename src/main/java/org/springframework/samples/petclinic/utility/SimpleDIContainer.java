@@ -0,0 +1,628 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The {@link SimpleDI} container returned by {@link SimpleDI#getDIContainer()}.
+ * <p>
+ * Every registration is turned into a pre-bound {@link Callable} once, when it is
+ * registered: an instance becomes a callable returning it, and a constructor function is
+ * wrapped so that it runs once, on first use, and its result is shared. The callables
+ * live in an immutable map that is copied on every registration and published through a
+ * volatile field, so {@link #getInstanceOf(Class)} takes no lock and, once a singleton
+ * exists, costs a map lookup and a field read. Registrations are expected to be rare
+ * compared to lookups.
+ * <p>
+ * A concrete class without a registration is autowired: its constructor annotated with
+ * {@link Autowired}, else its only public constructor, is called with instances of the
+ * parameter types, which are resolved the same way. The constructor is reflected once and
+ * registered as a singleton that invokes it through a {@link MethodHandle}, or through a
+ * {@link LambdaMetafactory} generated {@link Supplier} if it takes no arguments. A type
+ * that needs itself, directly or not, fails with the dependency path. Constructors
+ * recorded at build time by the
+ * {@link org.springframework.samples.petclinic.utility.processor.SimpleDIIndexProcessor}
+ * are called directly, without reflecting on the class at all.
+ * <p>
+ * {@link #initializeAll(Duration)} creates the singletons up front on a virtual thread
+ * per singleton where available, each once the singletons its constructor needs exist.
+ * The dependencies of a constructor function are not known, it creates what it asks for
+ * itself or waits for another thread doing so. A provider still running at the timeout is
+ * interrupted and abandoned: threads waiting for it stop waiting, and the next request
+ * for its singleton runs the provider again. Should the abandoned provider still return,
+ * whichever of the two finishes first creates the singleton. No lock is held while a
+ * provider runs, so a stuck provider never blocks lookups of other types.
+ * <p>
+ * Every {@link Lifetime#THREAD thread} and {@link Lifetime#SCOPED scoped} registration
+ * gets an id of its own, its index in the array of instances each thread and each scope
+ * holds. Looking such an instance up costs a thread local read and an array access, and
+ * threads never share anything but the provider map. A singleton that asks for a scoped
+ * or thread confined type keeps the instance it got.
+ */
+final class SimpleDIContainer extends SimpleDI {
+
+	private final static Logger log = LoggerFactory.getLogger(SimpleDIContainer.class);
+
+	static final SimpleDIContainer INSTANCE = new SimpleDIContainer();
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	/** constructors recorded at build time, empty if the index was not generated */
+	static final Map<Class<?>, IndexedConstructor> INDEX = loadIndex();
+
+	/** guarded by {@code this} for writes, never modified once published */
+	private volatile Map<Class<?>, Callable<Object>> providers = Collections.emptyMap();
+
+	/** types being created by the current thread, outermost first */
+	private final ThreadLocal<ArrayDeque<Class<?>>> resolving = ThreadLocal.withInitial(ArrayDeque::new);
+
+	/** ids handed out to thread and scope confined registrations, guarded by {@code this} */
+	private volatile int typeIds;
+
+	private final ThreadLocal<Object[]> threadInstances = ThreadLocal.withInitial(() -> new Object[typeIds]);
+
+	private final ThreadLocal<TaskScope> currentScope = new ThreadLocal<>();
+
+	SimpleDIContainer() {
+	}
+
+	@Override
+	public void provideByInstance(Class<?> typeClass, Object instanceOfType) {
+		if (!typeClass.isInstance(instanceOfType)) {
+			throw new IllegalArgumentException(instanceOfType + " is not an instance of " + typeClass.getName());
+		}
+		register(typeClass, () -> instanceOfType);
+	}
+
+	@Override
+	public void provideByAConstructorFunction(Class<?> typeClass, Callable<Object> providerFunction) {
+		provideByAConstructorFunction(typeClass, Lifetime.SINGLETON, providerFunction);
+	}
+
+	@Override
+	public void provideByAConstructorFunction(Class<?> typeClass, Lifetime lifetime,
+			Callable<Object> providerFunction) {
+		if (providerFunction == null) {
+			throw new IllegalArgumentException("No constructor function given for " + typeClass.getName());
+		}
+		switch (lifetime) {
+		case SINGLETON:
+			register(typeClass, new Singleton(typeClass, providerFunction));
+			break;
+		case PROTOTYPE:
+			register(typeClass, () -> create(typeClass, providerFunction));
+			break;
+		case THREAD:
+			registerConfined(typeClass, id -> new ThreadConfined(typeClass, id, providerFunction));
+			break;
+		case SCOPED:
+			registerConfined(typeClass, id -> new Scoped(typeClass, id, providerFunction));
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown lifetime " + lifetime);
+		}
+	}
+
+	@Override
+	public Object getInstanceOf(Class<?> requiredType) throws Exception {
+		Callable<Object> provider = providers.get(requiredType);
+		if (provider == null) {
+			provider = autowire(requiredType);
+		}
+		return provider.call();
+	}
+
+	@Override
+	public Scope openScope() {
+		TaskScope scope = new TaskScope(currentScope.get());
+		currentScope.set(scope);
+		return scope;
+	}
+
+	private synchronized void register(Class<?> typeClass, Callable<Object> provider) {
+		Map<Class<?>, Callable<Object>> copy = new HashMap<>(providers);
+		copy.put(typeClass, provider);
+		providers = Collections.unmodifiableMap(copy);
+	}
+
+	/**
+	 * Registers a provider under a new id, so instances of an earlier registration of the
+	 * type are not found again.
+	 */
+	private synchronized void registerConfined(Class<?> typeClass, IntFunction<Callable<Object>> provider) {
+		int id = typeIds;
+		typeIds = id + 1;
+		register(typeClass, provider.apply(id));
+	}
+
+	/**
+	 * Calls the constructor function, tracking the creation so that a type that depends
+	 * on itself fails instead of recursing.
+	 */
+	private Object create(Class<?> type, Callable<Object> constructor) throws Exception {
+		ArrayDeque<Class<?>> path = resolving.get();
+		if (path.contains(type)) {
+			throw cycle(path, type);
+		}
+		path.addLast(type);
+		try {
+			Object created = constructor.call();
+			if (!type.isInstance(created)) {
+				throw new IllegalStateException("Constructor function of " + type.getName() + " returned " + created);
+			}
+			return created;
+		} finally {
+			path.removeLast();
+		}
+	}
+
+	/**
+	 * @return the array, grown to hold the id and every id handed out so far
+	 */
+	private Object[] grow(Object[] instances, int id) {
+		return Arrays.copyOf(instances, Math.max(id + 1, typeIds));
+	}
+
+	/**
+	 * Registers a singleton calling the type's constructor, unless another thread has
+	 * registered the type meanwhile.
+	 */
+	private synchronized Callable<Object> autowire(Class<?> type) {
+		Callable<Object> provider = providers.get(type);
+		if (provider == null) {
+			provider = constructorOf(type);
+			register(type, provider);
+		}
+		return provider;
+	}
+
+	private Singleton constructorOf(Class<?> type) {
+		IndexedConstructor indexed = INDEX.get(type);
+		if (indexed != null) {
+			return new Singleton(type, () -> indexed.factory.apply(argumentsFor(indexed.parameterTypes)),
+					indexed.parameterTypes);
+		}
+		if (type.isInterface() || type.isPrimitive() || type.isArray() || Modifier.isAbstract(type.getModifiers())) {
+			throw new IllegalArgumentException("No provider registered for " + type.getName() + requiredBy());
+		}
+		Constructor<?> constructor = chooseConstructor(type);
+		MethodHandle handle;
+		try {
+			if (!Modifier.isPublic(constructor.getModifiers()) || !Modifier.isPublic(type.getModifiers())) {
+				constructor.setAccessible(true);
+			}
+			handle = LOOKUP.unreflectConstructor(constructor);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			throw new IllegalArgumentException("Cannot access the constructor of " + type.getName() + requiredBy(), e);
+		}
+		Class<?>[] parameterTypes = constructor.getParameterTypes();
+		if (parameterTypes.length == 0) {
+			Supplier<?> supplier = supplierOf(constructor, handle);
+			if (supplier != null) {
+				return new Singleton(type, supplier::get, parameterTypes);
+			}
+		}
+		MethodHandle spread = handle.asType(handle.type().changeReturnType(Object.class))
+				.asSpreader(Object[].class, parameterTypes.length);
+		return new Singleton(type, () -> {
+			Object[] arguments = argumentsFor(parameterTypes);
+			try {
+				return (Object) spread.invokeExact(arguments);
+			} catch (Exception | Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new IllegalStateException("Creating " + type.getName() + " failed", e);
+			}
+		}, parameterTypes);
+	}
+
+	private Object[] argumentsFor(Class<?>[] parameterTypes) throws Exception {
+		Object[] arguments = new Object[parameterTypes.length];
+		for (int i = 0; i < arguments.length; i++) {
+			arguments[i] = getInstanceOf(parameterTypes[i]);
+		}
+		return arguments;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<Class<?>, IndexedConstructor> loadIndex() {
+		try {
+			Class<?> index = Class.forName(SimpleDIContainer.class.getPackage().getName() + ".SimpleDIIndex");
+			return ((Supplier<Map<Class<?>, IndexedConstructor>>) index.getDeclaredConstructor().newInstance()).get();
+		} catch (ReflectiveOperationException e) {
+			// compiled without the annotation processor, e.g. by an IDE
+			return Collections.emptyMap();
+		}
+	}
+
+	private Constructor<?> chooseConstructor(Class<?> type) {
+		Constructor<?>[] constructors = type.getDeclaredConstructors();
+		for (Constructor<?> constructor : constructors) {
+			if (constructor.isAnnotationPresent(Autowired.class)) {
+				return constructor;
+			}
+		}
+		Constructor<?>[] publicConstructors = type.getConstructors();
+		if (publicConstructors.length == 1) {
+			return publicConstructors[0];
+		}
+		if (constructors.length == 1) {
+			return constructors[0];
+		}
+		throw new IllegalArgumentException("Cannot choose between the constructors of " + type.getName()
+				+ ", annotate one with @Autowired" + requiredBy());
+	}
+
+	/**
+	 * @return a generated supplier calling the no-argument constructor, or {@code null}
+	 * unless the constructor and its class are public. The generated class calls the
+	 * constructor like code in this package would, and an inaccessible one only fails
+	 * with an {@link IllegalAccessError} once the supplier is called.
+	 */
+	private static Supplier<?> supplierOf(Constructor<?> constructor, MethodHandle handle) {
+		if (!Modifier.isPublic(constructor.getModifiers())) {
+			return null;
+		}
+		for (Class<?> type = constructor.getDeclaringClass(); type != null; type = type.getEnclosingClass()) {
+			if (!Modifier.isPublic(type.getModifiers())) {
+				return null;
+			}
+		}
+		try {
+			CallSite site = LambdaMetafactory.metafactory(LOOKUP, "get", MethodType.methodType(Supplier.class),
+					MethodType.methodType(Object.class), handle,
+					MethodType.methodType(constructor.getDeclaringClass()));
+			return (Supplier<?>) site.getTarget().invoke();
+		} catch (Throwable e) {
+			return null;
+		}
+	}
+
+	@Override
+	public void initializeAll(Duration timeout) throws Exception {
+		Map<Class<?>, CompletableFuture<Void>> graph = new LinkedHashMap<>();
+		CompletableFuture<Void> failed = new CompletableFuture<>();
+		ExecutorService executor = CacheExecutors.newBlockingExecutor("simple-di-");
+		try {
+			for (Class<?> type : providers.keySet()) {
+				schedule(type, graph, failed, executor);
+			}
+			CompletableFuture<Void> created = CompletableFuture.allOf(graph.values().toArray(new CompletableFuture<?>[0]));
+			CompletableFuture.anyOf(created, failed).get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			abandon(graph);
+			throw new TimeoutException("Singletons not created within " + timeout.toMillis() + "ms: " + graph.entrySet()
+					.stream().filter(node -> !node.getValue().isDone()).map(node -> node.getKey().getSimpleName())
+					.collect(Collectors.joining(", ")));
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Stops waiting for the singletons of the graph that are not created yet.
+	 */
+	private void abandon(Map<Class<?>, CompletableFuture<Void>> graph) {
+		graph.forEach((type, scheduled) -> {
+			Callable<Object> provider = providers.get(type);
+			if (!scheduled.isDone() && provider instanceof Singleton) {
+				((Singleton) provider).abandon();
+			}
+		});
+	}
+
+	/**
+	 * Adds the creation of the type, after the creation of its constructor's parameters,
+	 * to the graph.
+	 */
+	private CompletableFuture<Void> schedule(Class<?> type, Map<Class<?>, CompletableFuture<Void>> graph,
+			CompletableFuture<Void> failed, ExecutorService executor) {
+		CompletableFuture<Void> scheduled = graph.get(type);
+		if (scheduled != null) {
+			return scheduled;
+		}
+		ArrayDeque<Class<?>> path = resolving.get();
+		if (path.contains(type)) {
+			throw cycle(path, type);
+		}
+		Callable<Object> provider = providers.get(type);
+		if (provider == null) {
+			provider = autowire(type);
+		}
+		if (!(provider instanceof Singleton) || ((Singleton) provider).isCreated()) {
+			scheduled = CompletableFuture.completedFuture(null);
+		} else {
+			Singleton singleton = (Singleton) provider;
+			CompletableFuture<?>[] dependencies = new CompletableFuture<?>[singleton.dependencies.length];
+			path.addLast(type);
+			try {
+				for (int i = 0; i < dependencies.length; i++) {
+					dependencies[i] = schedule(singleton.dependencies[i], graph, failed, executor);
+				}
+			} finally {
+				path.removeLast();
+			}
+			scheduled = CompletableFuture.allOf(dependencies).thenRunAsync(() -> {
+				try {
+					singleton.call();
+				} catch (Exception e) {
+					throw new CompletionException(e);
+				}
+			}, executor);
+			scheduled.whenComplete((created, e) -> {
+				if (e != null) {
+					failed.completeExceptionally(e);
+				}
+			});
+		}
+		graph.put(type, scheduled);
+		return scheduled;
+	}
+
+	private static IllegalStateException cycle(ArrayDeque<Class<?>> path, Class<?> type) {
+		return new IllegalStateException("Dependency cycle: " + describe(Stream.concat(path.stream(), Stream.of(type))));
+	}
+
+	/**
+	 * @return " (required by A -> B)" for the types the current thread is creating
+	 */
+	private String requiredBy() {
+		ArrayDeque<Class<?>> path = resolving.get();
+		return path.isEmpty() ? "" : " (required by " + describe(path.stream()) + ")";
+	}
+
+	private static String describe(Stream<Class<?>> path) {
+		return path.map(Class::getSimpleName).collect(Collectors.joining(" -> "));
+	}
+
+	/**
+	 * Runs a constructor function once and returns its result from then on. The first
+	 * thread to ask runs it and publishes a future that other threads wait on, sharing
+	 * its result or its failure; after a failure the next request tries again.
+	 */
+	private final class Singleton implements Callable<Object> {
+
+		private final Class<?> type;
+		private final Callable<Object> constructor;
+		/** types the constructor is known to ask for */
+		private final Class<?>[] dependencies;
+		private volatile Object instance;
+		/** the creation in progress, if any */
+		private final AtomicReference<CompletableFuture<Object>> creation = new AtomicReference<>();
+
+		Singleton(Class<?> type, Callable<Object> constructor) {
+			this(type, constructor, new Class<?>[0]);
+		}
+
+		Singleton(Class<?> type, Callable<Object> constructor, Class<?>[] dependencies) {
+			this.type = type;
+			this.constructor = constructor;
+			this.dependencies = dependencies;
+		}
+
+		boolean isCreated() {
+			return instance != null;
+		}
+
+		@Override
+		public Object call() throws Exception {
+			Object result = instance;
+			while (result == null) {
+				CompletableFuture<Object> running = creation.get();
+				if (running == null) {
+					CompletableFuture<Object> mine = new CompletableFuture<>();
+					if (creation.compareAndSet(null, mine)) {
+						return createAndPublish(mine);
+					}
+				} else {
+					ArrayDeque<Class<?>> path = resolving.get();
+					if (path.contains(type)) {
+						// this thread is the one creating it
+						throw cycle(path, type);
+					}
+					result = await(running);
+				}
+				if (result == null) {
+					result = instance;
+				}
+			}
+			return result;
+		}
+
+		private Object createAndPublish(CompletableFuture<Object> mine) throws Exception {
+			Object created;
+			try {
+				created = create(type, constructor);
+			} catch (Exception | Error e) {
+				creation.compareAndSet(mine, null);
+				mine.completeExceptionally(e);
+				throw e;
+			}
+			synchronized (this) {
+				// an abandoned creation may have been overtaken by a later one
+				if (instance == null) {
+					instance = created;
+				}
+			}
+			creation.compareAndSet(mine, null);
+			mine.complete(instance);
+			return instance;
+		}
+
+		/**
+		 * @return the instance, or {@code null} if the creation was abandoned
+		 */
+		private Object await(CompletableFuture<Object> running) throws Exception {
+			try {
+				return running.get();
+			} catch (CancellationException e) {
+				return null;
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception) {
+					throw (Exception) e.getCause();
+				}
+				throw (Error) e.getCause();
+			}
+		}
+
+		/**
+		 * Releases the threads waiting for the creation in progress, and lets the next
+		 * request start a new one.
+		 */
+		void abandon() {
+			CompletableFuture<Object> running = creation.get();
+			if (running != null && creation.compareAndSet(running, null)) {
+				running.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Runs a constructor function once per thread.
+	 */
+	private final class ThreadConfined implements Callable<Object> {
+
+		private final Class<?> type;
+		private final int id;
+		private final Callable<Object> constructor;
+
+		ThreadConfined(Class<?> type, int id, Callable<Object> constructor) {
+			this.type = type;
+			this.id = id;
+			this.constructor = constructor;
+		}
+
+		@Override
+		public Object call() throws Exception {
+			Object[] instances = threadInstances.get();
+			if (id < instances.length && instances[id] != null) {
+				return instances[id];
+			}
+			Object created = create(type, constructor);
+			// re-read, the constructor may have grown the array
+			instances = threadInstances.get();
+			if (id >= instances.length) {
+				instances = grow(instances, id);
+				threadInstances.set(instances);
+			}
+			instances[id] = created;
+			return created;
+		}
+	}
+
+	/**
+	 * Runs a constructor function once per scope, in the scope open on the calling thread.
+	 */
+	private final class Scoped implements Callable<Object> {
+
+		private final Class<?> type;
+		private final int id;
+		private final Callable<Object> constructor;
+
+		Scoped(Class<?> type, int id, Callable<Object> constructor) {
+			this.type = type;
+			this.id = id;
+			this.constructor = constructor;
+		}
+
+		@Override
+		public Object call() throws Exception {
+			TaskScope scope = currentScope.get();
+			if (scope == null) {
+				throw new IllegalStateException("No scope is open for " + type.getName() + requiredBy());
+			}
+			Object[] instances = scope.instances;
+			if (id < instances.length && instances[id] != null) {
+				return instances[id];
+			}
+			return scope.add(id, create(type, constructor));
+		}
+	}
+
+	/**
+	 * The instances of the scoped types, confined to the thread that opened the scope.
+	 */
+	private final class TaskScope implements Scope {
+
+		private final TaskScope enclosing;
+		private final Thread owner = Thread.currentThread();
+		private Object[] instances = new Object[typeIds];
+		/** most recently created first */
+		private final ArrayDeque<AutoCloseable> closeables = new ArrayDeque<>();
+		private boolean closed;
+
+		TaskScope(TaskScope enclosing) {
+			this.enclosing = enclosing;
+		}
+
+		Object add(int id, Object instance) {
+			if (id >= instances.length) {
+				instances = grow(instances, id);
+			}
+			instances[id] = instance;
+			if (instance instanceof AutoCloseable) {
+				closeables.push((AutoCloseable) instance);
+			}
+			return instance;
+		}
+
+		@Override
+		public void close() {
+			if (closed) {
+				return;
+			}
+			if (Thread.currentThread() != owner || currentScope.get() != this) {
+				throw new IllegalStateException("Scopes must be closed innermost first, on the thread that opened them");
+			}
+			closed = true;
+			if (enclosing != null) {
+				currentScope.set(enclosing);
+			} else {
+				currentScope.remove();
+			}
+			for (AutoCloseable closeable : closeables) {
+				try {
+					closeable.close();
+				} catch (Exception e) {
+					log.warn("Closing {} failed", closeable, e);
+				}
+			}
+			closeables.clear();
+			instances = new Object[0];
+		}
+	}
+}
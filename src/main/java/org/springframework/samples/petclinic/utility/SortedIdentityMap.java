@@ -0,0 +1,318 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.springframework.samples.petclinic.model.BaseEntity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * An {@link IdentityMap} that keeps an ordered index over its entities. The sort key is
+ * bound once at construction and the index is updated incrementally on add, replace and
+ * remove, so range queries and rank/select by position never re-sort. A search down the
+ * index changes nothing until it has compared every key on its way, so an insert or
+ * delete that throws leaves the index as it was.
+ * <p>
+ * Entities with equal keys are ordered by id. As with a {@link java.util.TreeSet}, the
+ * key of an entity must not change while it is in the map: remove it, change it and add
+ * it again (or add a fresh copy with the same id).
+ *
+ * @param <Entity> the entity type
+ * @param <K> the sort key type
+ */
+public class SortedIdentityMap<Entity extends BaseEntity, K> extends IdentityMap<Entity> {
+
+	private final Function<? super Entity, ? extends K> keyExtractor;
+	private final Comparator<? super K> keyComparator;
+
+	/** root of a size-augmented treap ordered by (key, id) */
+	private Node<Entity, K> root;
+	private int seed = 0x2545F491;
+
+	public SortedIdentityMap(Function<? super Entity, ? extends K> keyExtractor, Comparator<? super K> keyComparator) {
+		this.keyExtractor = keyExtractor;
+		this.keyComparator = keyComparator;
+	}
+
+	public static <Entity extends BaseEntity, K extends Comparable<? super K>> SortedIdentityMap<Entity, K> orderedBy(
+			Function<? super Entity, ? extends K> keyExtractor) {
+		return new SortedIdentityMap<>(keyExtractor, Comparator.naturalOrder());
+	}
+
+	/**
+	 * @return the entity at the given position in key order
+	 */
+	public Entity select(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		}
+		Node<Entity, K> node = root;
+		while (true) {
+			int leftSize = sizeOf(node.left);
+			if (index < leftSize) {
+				node = node.left;
+			} else if (index == leftSize) {
+				return node.entity;
+			} else {
+				index -= leftSize + 1;
+				node = node.right;
+			}
+		}
+	}
+
+	/**
+	 * @return the position in key order of the entity in the map with the same id, or -1
+	 * if there is none; the key is taken from that entity, not the given one
+	 */
+	public int rank(Entity entity) {
+		Integer id = entity.getId();
+		Entity stored = id == null ? null : get(id);
+		if (stored == null) {
+			return -1;
+		}
+		K key = keyExtractor.apply(stored);
+		int rank = 0;
+		Node<Entity, K> node = root;
+		while (node != null) {
+			int cmp = compare(key, id, node);
+			if (cmp < 0) {
+				node = node.left;
+			} else if (cmp > 0) {
+				rank += sizeOf(node.left) + 1;
+				node = node.right;
+			} else {
+				return rank + sizeOf(node.left);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return up to {@code limit} entities in key order, starting at position {@code offset}
+	 */
+	public List<Entity> page(int offset, int limit) {
+		if (offset < 0 || limit < 0) {
+			throw new IllegalArgumentException("offset and limit must not be negative");
+		}
+		return between(offset, (int) Math.min((long) offset + limit, size()));
+	}
+
+	/**
+	 * @return all entities with a key strictly less than {@code toKey}, in key order
+	 */
+	public List<Entity> head(K toKey) {
+		return between(0, countLess(toKey));
+	}
+
+	/**
+	 * @return all entities with a key greater than or equal to {@code fromKey}, in key order
+	 */
+	public List<Entity> tail(K fromKey) {
+		return between(countLess(fromKey), size());
+	}
+
+	/**
+	 * @return all entities with {@code fromKey <= key < toKey}, in key order
+	 */
+	public List<Entity> range(K fromKey, K toKey) {
+		return between(countLess(fromKey), countLess(toKey));
+	}
+
+	/**
+	 * @return all entities in key order
+	 */
+	public List<Entity> sorted() {
+		return between(0, size());
+	}
+
+	/**
+	 * Adds the entity, replacing any entity with the same id. The index is updated before
+	 * the map, so if the key extractor or the comparator throws, neither has changed.
+	 */
+	@Override
+	public boolean add(Entity entity) {
+		if (entity.getId() == null) {
+			return super.add(entity);
+		}
+		Node<Entity, K> node = new Node<>(entity, keyExtractor.apply(entity), nextPriority());
+		Entity replaced = get(node.id);
+		if (replaced == null) {
+			root = insert(root, node);
+		} else {
+			K replacedKey = keyExtractor.apply(replaced);
+			root = delete(root, replacedKey, node.id);
+			try {
+				root = insert(root, node);
+			} catch (RuntimeException | Error e) {
+				root = insert(root, new Node<>(replaced, replacedKey, nextPriority()));
+				throw e;
+			}
+		}
+		return super.add(entity);
+	}
+
+	@Override
+	protected void entityRemoved(Entity entity) {
+		root = delete(root, keyExtractor.apply(entity), entity.getId());
+	}
+
+	@Override
+	protected void entitiesCleared() {
+		root = null;
+	}
+
+	/**
+	 * number of entries whose key is strictly less than the given key
+	 */
+	private int countLess(K key) {
+		int count = 0;
+		Node<Entity, K> node = root;
+		while (node != null) {
+			int cmp = keyComparator.compare(key, node.key);
+			if (cmp > 0) {
+				count += sizeOf(node.left) + 1;
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return count;
+	}
+
+	private List<Entity> between(int fromIndex, int toIndex) {
+		if (fromIndex >= toIndex) {
+			return Collections.emptyList();
+		}
+		List<Entity> result = new ArrayList<>(toIndex - fromIndex);
+		collect(root, fromIndex, toIndex, result);
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * in-order walk restricted to ranks [fromIndex, toIndex) relative to {@code node}
+	 */
+	private static <Entity extends BaseEntity, K> void collect(Node<Entity, K> node, int fromIndex, int toIndex,
+			List<Entity> result) {
+		while (node != null && fromIndex < toIndex) {
+			int leftSize = sizeOf(node.left);
+			if (fromIndex < leftSize) {
+				collect(node.left, fromIndex, Math.min(toIndex, leftSize), result);
+			}
+			if (fromIndex <= leftSize && leftSize < toIndex) {
+				result.add(node.entity);
+			}
+			fromIndex = Math.max(fromIndex - leftSize - 1, 0);
+			toIndex -= leftSize + 1;
+			node = node.right;
+		}
+	}
+
+	private Node<Entity, K> insert(Node<Entity, K> node, Node<Entity, K> inserted) {
+		if (node == null) {
+			return inserted;
+		}
+		if (compare(inserted.key, inserted.id, node) < 0) {
+			node.left = insert(node.left, inserted);
+			if (node.left.priority > node.priority) {
+				node = rotateRight(node);
+			}
+		} else {
+			node.right = insert(node.right, inserted);
+			if (node.right.priority > node.priority) {
+				node = rotateLeft(node);
+			}
+		}
+		node.update();
+		return node;
+	}
+
+	private Node<Entity, K> delete(Node<Entity, K> node, K key, int id) {
+		if (node == null) {
+			return null;
+		}
+		int cmp = compare(key, id, node);
+		if (cmp < 0) {
+			node.left = delete(node.left, key, id);
+		} else if (cmp > 0) {
+			node.right = delete(node.right, key, id);
+		} else {
+			return merge(node.left, node.right);
+		}
+		node.update();
+		return node;
+	}
+
+	private static <Entity extends BaseEntity, K> Node<Entity, K> merge(Node<Entity, K> left, Node<Entity, K> right) {
+		if (left == null) {
+			return right;
+		}
+		if (right == null) {
+			return left;
+		}
+		if (left.priority > right.priority) {
+			left.right = merge(left.right, right);
+			left.update();
+			return left;
+		}
+		right.left = merge(left, right.left);
+		right.update();
+		return right;
+	}
+
+	private static <Entity extends BaseEntity, K> Node<Entity, K> rotateRight(Node<Entity, K> node) {
+		Node<Entity, K> pivot = node.left;
+		node.left = pivot.right;
+		node.update();
+		pivot.right = node;
+		return pivot;
+	}
+
+	private static <Entity extends BaseEntity, K> Node<Entity, K> rotateLeft(Node<Entity, K> node) {
+		Node<Entity, K> pivot = node.right;
+		node.right = pivot.left;
+		node.update();
+		pivot.left = node;
+		return pivot;
+	}
+
+	private int compare(K key, int id, Node<Entity, K> node) {
+		int cmp = keyComparator.compare(key, node.key);
+		return cmp != 0 ? cmp : Integer.compare(id, node.id);
+	}
+
+	private int nextPriority() {
+		// xorshift, good enough to keep the treap balanced in expectation
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		return seed;
+	}
+
+	private static int sizeOf(Node<?, ?> node) {
+		return node == null ? 0 : node.size;
+	}
+
+	private static final class Node<Entity extends BaseEntity, K> {
+
+		final Entity entity;
+		final K key;
+		final int id;
+		final int priority;
+		int size = 1;
+		Node<Entity, K> left;
+		Node<Entity, K> right;
+
+		Node(Entity entity, K key, int priority) {
+			this.entity = entity;
+			this.key = key;
+			this.id = entity.getId();
+			this.priority = priority;
+		}
+
+		void update() {
+			size = 1 + sizeOf(left) + sizeOf(right);
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package org.springframework.samples.petclinic.utility;
+
+/**
+ * Monotonic time source of {@link TimedCache}, in nanoseconds. Only differences
+ * between two readings are meaningful.
+ */
+@FunctionalInterface
+public interface Ticker {
+
+	long read();
+
+	/**
+	 * @return a ticker backed by {@link System#nanoTime()}
+	 */
+	static Ticker system() {
+		return System::nanoTime;
+	}
+}
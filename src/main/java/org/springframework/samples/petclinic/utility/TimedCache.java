@@ -0,0 +1,875 @@
+package org.springframework.samples.petclinic.utility;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * In-memory cache that expires entries a fixed time after they were written and holds at
+ * most a configured number of entries. It is the engine behind {@link PetTimedCache} and
+ * behind every cache of the {@link TimedCacheManager}.
+ * <p>
+ * Every entry lives in a single {@link Node} that carries both the value and its write
+ * time. Since all entries share the same time to live, write order is also deadline
+ * order: nodes are linked into a write-order deque and expiry only ever looks at its
+ * head, so the cost of a cleanup pass is proportional to the number of entries that
+ * actually expire rather than to the size of the cache. Expired entries are removed by a
+ * task on the shared {@link CacheExecutors} scheduler that reschedules itself for the
+ * next deadline.
+ * <p>
+ * Size is bounded with W-TinyLFU: new entries enter a small LRU window, and when the
+ * cache is full a {@link FrequencySketch} decides whether the window's candidate may
+ * displace the least recently used entry of the segmented LRU main space (probation and
+ * protected). One-off requests such as crawler traffic therefore cannot flush out entries
+ * that are requested repeatedly. Reads are recorded in a lossy ring buffer and applied to
+ * the policy in batches, so the hit path does not take the eviction lock.
+ * <p>
+ * Misses are loaded single-flight: the first caller for a key runs the loader and
+ * concurrent callers for the same key wait on its result (or its failure) instead of
+ * loading it again. {@link #getAll(Collection, Function)} loads all of its misses with one
+ * call to a bulk loader. Keys the loader has no value for are remembered in a small
+ * {@link NegativeCache} with a shorter time to live. {@link #put(Object, Object)} and
+ * {@link #invalidate(Object)} supersede loads that are still running, so those never
+ * cache what they read before the write.
+ * <p>
+ * With refresh-ahead enabled, a hit on an entry older than the configured fraction of its
+ * time to live still returns the cached value but also reloads it on the loader executor,
+ * so popular entries are replaced before they expire and readers do not pay for the
+ * reload. Refreshes are skipped while the configured number of them is already running.
+ * <p>
+ * The cache does not log per request. Hits, misses, loads and evictions are counted (see
+ * {@link #stats()} and the Micrometer meters, tagged with the cache name) and one in
+ * {@value #TRACE_SAMPLE_RATE} hits is traced when TRACE is enabled, so a hit neither
+ * formats nor allocates anything. Entry ages are measured with a {@link Ticker}.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values, {@code null} values are not cached as entries
+ */
+public class TimedCache<K, V> implements MeterBinder {
+
+	private final static Logger log = LoggerFactory.getLogger(TimedCache.class);
+
+	private static final int READ_BUFFER_SIZE = 128;
+	private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+	/** try to drain the read buffer every this many reads */
+	private static final int READ_DRAIN_INTERVAL_MASK = 31;
+	private static final double WINDOW_PERCENT = 0.01;
+	private static final double PROTECTED_PERCENT = 0.8;
+	/** time to live of entries that never expire */
+	private static final long ETERNAL = Long.MAX_VALUE;
+	/** trace one in this many hits, a power of two */
+	static final int TRACE_SAMPLE_RATE = 1024;
+
+	private final String name;
+
+	private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+	/** loads in progress, one per key */
+	private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+
+	/** guards the deques, the sketch and the segment sizes */
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private final WriteOrderDeque<K, V> writeOrder = new WriteOrderDeque<>();
+	private final AccessOrderDeque<K, V> window = new AccessOrderDeque<>();
+	private final AccessOrderDeque<K, V> probation = new AccessOrderDeque<>();
+	private final AccessOrderDeque<K, V> protectedSegment = new AccessOrderDeque<>();
+	private final FrequencySketch sketch;
+	private long windowSize;
+	private long protectedSize;
+	private long weightedSize;
+
+	private final AtomicReferenceArray<Node<K, V>> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+	private final AtomicLong readCounter = new AtomicLong();
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder loadSuccessCount = new LongAdder();
+	private final LongAdder loadFailureCount = new LongAdder();
+	private final LongAdder evictionCount = new LongAdder();
+	private final LongAdder expirationCount = new LongAdder();
+
+	private final long expiryNanos;
+	private final long maximumSize;
+	private final long windowMaximum;
+	private final long protectedMaximum;
+	/** how long to wait for another caller's load, 0 to wait indefinitely */
+	private final long loadTimeoutNanos;
+	/** age after which a hit triggers a reload, 0 if refresh-ahead is disabled */
+	private final long refreshAfterNanos;
+	/** limits concurrent refreshes, {@code null} if refresh-ahead is disabled */
+	private final Semaphore refreshPermits;
+	/** keys without a value, {@code null} if negative caching is disabled */
+	private final NegativeCache<K> missing;
+	private final CacheExecutors executors;
+	private final Ticker ticker;
+	private volatile ScheduledFuture<?> cleanUpTask;
+	private volatile boolean closed;
+
+	public TimedCache(String name, TimedCacheProperties properties, CacheExecutors executors) {
+		this(name, properties, executors, Ticker.system());
+	}
+
+	public TimedCache(String name, TimedCacheProperties properties, CacheExecutors executors, Ticker ticker) {
+		long maximumSize = properties.getMaximumSize();
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("maximumSize of cache " + name + " must be positive: " + maximumSize);
+		}
+		Duration expiry = properties.getExpiry();
+		if (expiry.isNegative()) {
+			throw new IllegalArgumentException("expiry of cache " + name + " must not be negative: " + expiry);
+		}
+		double refreshAhead = properties.getRefreshAheadFactor();
+		if (refreshAhead < 0 || refreshAhead >= 1) {
+			throw new IllegalArgumentException(
+					"refreshAheadFactor of cache " + name + " must be in [0, 1): " + refreshAhead);
+		}
+		this.name = name;
+		this.expiryNanos = expiry.isZero() ? ETERNAL : expiry.toNanos();
+		this.maximumSize = maximumSize;
+		this.windowMaximum = Math.max(1, (long) (maximumSize * WINDOW_PERCENT));
+		this.protectedMaximum = (long) ((maximumSize - windowMaximum) * PROTECTED_PERCENT);
+		this.sketch = new FrequencySketch(maximumSize);
+		this.loadTimeoutNanos = properties.getLoadTimeout() == null ? 0 : properties.getLoadTimeout().toNanos();
+		this.refreshAfterNanos = (long) (expiryNanos * refreshAhead);
+		this.refreshPermits = refreshAfterNanos > 0 ? new Semaphore(properties.getMaxConcurrentRefreshes()) : null;
+		this.missing = properties.getMissingMaximumSize() > 0
+				? new NegativeCache<>(properties.getMissingExpiry().toNanos(), properties.getMissingMaximumSize())
+				: null;
+		this.executors = executors;
+		this.ticker = ticker;
+		scheduleCleanUp(expiryNanos);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the cached value, or {@code null} if there is none or it is known to be
+	 * missing
+	 */
+	public V getIfPresent(K key) {
+		Node<K, V> node = data.get(key);
+		long now = ticker.read();
+		if (node != null && !hasExpired(node, now)) {
+			hitCount.increment();
+			recordRead(node);
+			return node.value;
+		}
+		if (missing != null && missing.contains(key, now)) {
+			hitCount.increment();
+		} else {
+			missCount.increment();
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the cached value, loading it with {@code loader} on a miss. The loader may
+	 * return {@code null} if there is no value for the key. Pass the same loader instance
+	 * on every call, e.g. a field, to keep the hit path allocation-free.
+	 */
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		Node<K, V> node = data.get(key);
+		long now = ticker.read();
+		if (node != null && !hasExpired(node, now)) {
+			hitCount.increment();
+			recordRead(node);
+			if (refreshAfterNanos > 0 && now - node.writeTime >= refreshAfterNanos) {
+				refreshAhead(node, loader);
+			}
+			return node.value;
+		} else if (missing != null && missing.contains(key, now)) {
+			hitCount.increment();
+			return null;
+		} else {
+			missCount.increment();
+			return load(key, loader);
+		}
+	}
+
+	/**
+	 * Returns the values for the given keys. Cached values are served from memory, the
+	 * others are loaded with a single call to {@code bulkLoader} and cached. Keys without
+	 * a value are left out of the result and negatively cached.
+	 * @param bulkLoader returns the values it found for the given keys
+	 * @return the values found, in the order of {@code keys}
+	 */
+	public Map<K, V> getAll(Collection<? extends K> keys, Function<? super List<K>, Map<K, V>> bulkLoader) {
+		Map<K, V> found = new HashMap<>();
+		List<K> misses = new ArrayList<>();
+		long now = ticker.read();
+		Set<K> seen = new HashSet<>();
+		for (K key : keys) {
+			if (!seen.add(key)) {
+				continue;
+			}
+			Node<K, V> node = data.get(key);
+			if (node != null && !hasExpired(node, now)) {
+				hitCount.increment();
+				recordRead(node);
+				found.put(key, node.value);
+			} else if (missing != null && missing.contains(key, now)) {
+				hitCount.increment();
+			} else {
+				misses.add(key);
+			}
+		}
+		if (!misses.isEmpty()) {
+			missCount.add(misses.size());
+			loadAll(misses, bulkLoader, found);
+		}
+		Map<K, V> result = new LinkedHashMap<>();
+		for (K key : keys) {
+			V value = found.get(key);
+			if (value != null) {
+				result.put(key, value);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Caches the value, replacing any previous one. Loads of the key that are still
+	 * running will not cache their result.
+	 * @return the previous value, or {@code null}
+	 */
+	public V put(K key, V value) {
+		evictionLock.lock();
+		try {
+			loading.remove(key);
+			if (missing != null) {
+				missing.remove(key);
+			}
+			return insert(key, value);
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Caches the value unless a fresh one is already cached.
+	 * @return the cached value, or {@code null} if the given one was cached
+	 */
+	public V putIfAbsent(K key, V value) {
+		evictionLock.lock();
+		try {
+			Node<K, V> node = data.get(key);
+			if (node != null && !hasExpired(node, ticker.read())) {
+				return node.value;
+			}
+			put(key, value);
+			return null;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the value, or the knowledge that it is missing, from the cache. Loads of
+	 * the key that are still running will not cache their result.
+	 */
+	public void invalidate(K key) {
+		evictionLock.lock();
+		try {
+			loading.remove(key);
+			if (missing != null) {
+				missing.remove(key);
+			}
+			remove(key);
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	public void invalidateAll() {
+		evictionLock.lock();
+		try {
+			loading.clear();
+			if (missing != null) {
+				missing.clear();
+			}
+			for (K key : data.keySet()) {
+				remove(key);
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of entries currently held, including expired entries that have
+	 * not been cleaned up yet
+	 */
+	public long size() {
+		return data.size();
+	}
+
+	public CacheStats stats() {
+		return new CacheStats(hitCount.sum(), missCount.sum(), loadSuccessCount.sum(), loadFailureCount.sum(),
+				evictionCount.sum(), expirationCount.sum());
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		FunctionCounter.builder("cache.gets", hitCount, LongAdder::sum).tag("cache", name).tag("result", "hit")
+				.description("the number of times cache lookup methods have returned a cached value")
+				.register(registry);
+		FunctionCounter.builder("cache.gets", missCount, LongAdder::sum).tag("cache", name).tag("result", "miss")
+				.description("the number of times cache lookup methods have returned an uncached value")
+				.register(registry);
+		FunctionCounter.builder("cache.loads", loadSuccessCount, LongAdder::sum).tag("cache", name)
+				.tag("result", "success").description("loader calls that completed").register(registry);
+		FunctionCounter.builder("cache.loads", loadFailureCount, LongAdder::sum).tag("cache", name)
+				.tag("result", "failure").description("loader calls that failed").register(registry);
+		FunctionCounter.builder("cache.evictions", evictionCount, LongAdder::sum).tag("cache", name)
+				.description("cache evictions because the cache was full").register(registry);
+		FunctionCounter.builder("cache.expirations", expirationCount, LongAdder::sum).tag("cache", name)
+				.description("cache entries removed because their time to live passed").register(registry);
+		Gauge.builder("cache.size", data, ConcurrentHashMap::size).tag("cache", name)
+				.description("the number of entries in this cache").register(registry);
+	}
+
+	/**
+	 * Stops removing expired entries in the background. The shared executors are left
+	 * running.
+	 */
+	public void close() {
+		closed = true;
+		ScheduledFuture<?> task = cleanUpTask;
+		if (task != null) {
+			task.cancel(false);
+		}
+	}
+
+	/**
+	 * Removes all expired entries.
+	 * @return nanoseconds until the next entry expires, or the full time to live if the
+	 * cache is empty
+	 */
+	long cleanUp() {
+		long now = ticker.read();
+		evictionLock.lock();
+		try {
+			drainReadBuffer();
+			Node<K, V> node;
+			while ((node = writeOrder.peekFirst()) != null && hasExpired(node, now)) {
+				removeFromPolicy(node);
+				// a concurrent put may already have replaced the mapping with a fresh node
+				if (data.remove(node.key, node)) {
+					expirationCount.increment();
+				}
+			}
+			if (missing != null) {
+				missing.cleanUp(now);
+			}
+			return node == null ? expiryNanos : node.writeTime + expiryNanos - now;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	private void scheduleCleanUp(long delayInNanos) {
+		if (closed || expiryNanos == ETERNAL) {
+			// nothing expires, the negative cache is bounded by its size
+			return;
+		}
+		try {
+			// at most once a millisecond
+			cleanUpTask = executors.scheduler().schedule(this::runCleanUp,
+					Math.max(TimeUnit.MILLISECONDS.toNanos(1), delayInNanos), TimeUnit.NANOSECONDS);
+		} catch (RejectedExecutionException e) {
+			// the shared executors are shutting down
+		}
+	}
+
+	private void runCleanUp() {
+		long nextExpiry = expiryNanos;
+		try {
+			nextExpiry = cleanUp();
+		} catch (RuntimeException e) {
+			log.error("Removing expired entries of cache {} failed", name, e);
+		} finally {
+			scheduleCleanUp(nextExpiry);
+		}
+	}
+
+	/**
+	 * Loads the value unless another caller is already loading it, in which case this
+	 * waits for that load and shares its result or its failure.
+	 */
+	private V load(K key, Function<? super K, ? extends V> loader) {
+		CompletableFuture<V> future = new CompletableFuture<>();
+		CompletableFuture<V> inFlight = loading.putIfAbsent(key, future);
+		if (inFlight != null) {
+			return await(key, inFlight);
+		}
+		try {
+			// a load that finished between our miss and registering has already cached it
+			Node<K, V> node = data.get(key);
+			V value;
+			if (node != null && !hasExpired(node, ticker.read())) {
+				value = node.value;
+			} else {
+				value = callLoader(key, loader);
+				putLoaded(key, value, future);
+			}
+			future.complete(value);
+			return value;
+		} catch (RuntimeException | Error e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			loading.remove(key, future);
+		}
+	}
+
+	/**
+	 * Bulk variant of {@link #load(Object, Function)}: registers as the loader of every
+	 * missing key nobody else is loading, loads those at once, and waits for the rest.
+	 */
+	private void loadAll(List<K> misses, Function<? super List<K>, Map<K, V>> bulkLoader, Map<K, V> found) {
+		Map<K, CompletableFuture<V>> ours = new LinkedHashMap<>();
+		Map<K, CompletableFuture<V>> theirs = new HashMap<>();
+		for (K key : misses) {
+			CompletableFuture<V> future = new CompletableFuture<>();
+			CompletableFuture<V> inFlight = loading.putIfAbsent(key, future);
+			if (inFlight == null) {
+				ours.put(key, future);
+			} else {
+				theirs.put(key, inFlight);
+			}
+		}
+		try {
+			if (!ours.isEmpty()) {
+				Map<K, V> loaded;
+				try {
+					loaded = bulkLoader.apply(new ArrayList<>(ours.keySet()));
+				} catch (RuntimeException | Error e) {
+					loadFailureCount.increment();
+					throw e;
+				}
+				loadSuccessCount.increment();
+				ours.forEach((key, future) -> {
+					V value = loaded.get(key);
+					if (value != null) {
+						found.put(key, value);
+					}
+					putLoaded(key, value, future);
+					future.complete(value);
+				});
+			}
+		} catch (RuntimeException | Error e) {
+			ours.values().forEach(future -> future.completeExceptionally(e));
+			throw e;
+		} finally {
+			ours.forEach(loading::remove);
+		}
+		theirs.forEach((key, future) -> {
+			V value = await(key, future);
+			if (value != null) {
+				found.put(key, value);
+			}
+		});
+	}
+
+	/**
+	 * Schedules a reload of the node's value unless a load for it is already in
+	 * progress. The refresh registers as the in-flight load, so a miss that happens
+	 * meanwhile waits for it rather than loading again.
+	 */
+	private void refreshAhead(Node<K, V> node, Function<? super K, ? extends V> loader) {
+		K key = node.key;
+		if (loading.containsKey(key)) {
+			// every hit in the refresh window gets here, most while the refresh runs
+			return;
+		}
+		if (!refreshPermits.tryAcquire()) {
+			// saturated, the entry is reloaded on a later hit or after it expires
+			return;
+		}
+		CompletableFuture<V> future = new CompletableFuture<>();
+		if (loading.putIfAbsent(key, future) != null) {
+			refreshPermits.release();
+			return;
+		}
+		try {
+			executors.loader().execute(() -> refresh(node, loader, future));
+		} catch (RejectedExecutionException e) {
+			// shutting down
+			refreshPermits.release();
+			loading.remove(key, future);
+			future.complete(node.value);
+		}
+	}
+
+	private void refresh(Node<K, V> node, Function<? super K, ? extends V> loader, CompletableFuture<V> future) {
+		K key = node.key;
+		try {
+			V value = callLoader(key, loader);
+			putLoaded(key, value, future);
+			future.complete(value);
+		} catch (RuntimeException | Error e) {
+			// keep serving the current value until it expires
+			log.warn("Refreshing {} in cache {} failed", key, name, e);
+			future.complete(node.value);
+		} finally {
+			loading.remove(key, future);
+			refreshPermits.release();
+		}
+	}
+
+	private V callLoader(K key, Function<? super K, ? extends V> loader) {
+		log.debug("Loading {} into cache {}", key, name);
+		try {
+			V value = loader.apply(key);
+			loadSuccessCount.increment();
+			return value;
+		} catch (RuntimeException | Error e) {
+			loadFailureCount.increment();
+			throw e;
+		}
+	}
+
+	/**
+	 * Caches what {@code load} read, or that it found nothing, unless a write has
+	 * superseded the load since it started.
+	 */
+	private void putLoaded(K key, V value, CompletableFuture<V> load) {
+		evictionLock.lock();
+		try {
+			if (loading.get(key) != load) {
+				return;
+			}
+			if (value != null) {
+				insert(key, value);
+			} else {
+				remove(key);
+				if (missing != null) {
+					missing.add(key, ticker.read());
+				}
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	private V await(K key, CompletableFuture<V> inFlight) {
+		try {
+			return loadTimeoutNanos > 0 ? inFlight.get(loadTimeoutNanos, TimeUnit.NANOSECONDS) : inFlight.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException("Loading " + key + " into cache " + name + " failed", cause);
+		} catch (TimeoutException e) {
+			throw new QueryTimeoutException(
+					"Timed out waiting for " + key + " to be loaded into cache " + name + " by another request");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for " + key + " to be loaded", e);
+		}
+	}
+
+	/** maps and links a new node, caller holds the eviction lock */
+	private V insert(K key, V value) {
+		Node<K, V> node = new Node<>(key, value, ticker.read());
+		// writers map and link under the lock so the policy never holds a node that a
+		// concurrent put has already replaced
+		Node<K, V> previous = data.put(key, node);
+		if (previous != null) {
+			removeFromPolicy(previous);
+		}
+		sketch.ensureCapacity(weightedSize + 1);
+		sketch.increment(key.hashCode());
+		writeOrder.linkLast(node);
+		node.segment = Node.WINDOW;
+		window.linkLast(node);
+		windowSize++;
+		weightedSize++;
+		drainReadBuffer();
+		evictEntries();
+		return previous == null ? null : previous.value;
+	}
+
+	/** caller holds the eviction lock */
+	private void remove(K key) {
+		Node<K, V> node = data.remove(key);
+		if (node != null) {
+			removeFromPolicy(node);
+		}
+	}
+
+	/**
+	 * Records a hit in the lossy read buffer and occasionally drains it, without ever
+	 * waiting for the eviction lock.
+	 */
+	private void recordRead(Node<K, V> node) {
+		long index = readCounter.getAndIncrement();
+		readBuffer.lazySet((int) (index & READ_BUFFER_MASK), node);
+		if ((index & (TRACE_SAMPLE_RATE - 1)) == 0 && log.isTraceEnabled()) {
+			log.trace("Sampled hit on {} in cache {}", node.key, name);
+		}
+		if ((index & READ_DRAIN_INTERVAL_MASK) == READ_DRAIN_INTERVAL_MASK && evictionLock.tryLock()) {
+			try {
+				drainReadBuffer();
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+	}
+
+	/** applies buffered reads to the policy, caller holds the eviction lock */
+	private void drainReadBuffer() {
+		for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+			Node<K, V> node = readBuffer.getAndSet(i, null);
+			if (node != null) {
+				onAccess(node);
+			}
+		}
+	}
+
+	private void onAccess(Node<K, V> node) {
+		sketch.increment(node.key.hashCode());
+		switch (node.segment) {
+			case Node.WINDOW:
+				window.moveToLast(node);
+				break;
+			case Node.PROBATION:
+				// a second access promotes the entry to the protected segment
+				probation.unlink(node);
+				node.segment = Node.PROTECTED;
+				protectedSegment.linkLast(node);
+				protectedSize++;
+				demoteFromProtected();
+				break;
+			case Node.PROTECTED:
+				protectedSegment.moveToLast(node);
+				break;
+			default:
+				// already removed
+		}
+	}
+
+	private void demoteFromProtected() {
+		while (protectedSize > protectedMaximum) {
+			Node<K, V> demoted = protectedSegment.peekFirst();
+			protectedSegment.unlink(demoted);
+			protectedSize--;
+			demoted.segment = Node.PROBATION;
+			probation.linkLast(demoted);
+		}
+	}
+
+	/**
+	 * Moves window overflow into probation, then evicts until the cache fits, letting the
+	 * sketch pick between the newest probation entry and the probation LRU victim.
+	 */
+	private void evictEntries() {
+		while (windowSize > windowMaximum) {
+			Node<K, V> candidate = window.peekFirst();
+			window.unlink(candidate);
+			windowSize--;
+			candidate.segment = Node.PROBATION;
+			probation.linkLast(candidate);
+		}
+		while (weightedSize > maximumSize) {
+			Node<K, V> candidate = probation.peekLast();
+			Node<K, V> victim = probation.peekFirst();
+			if (victim == candidate) {
+				// at most one entry on probation, let it compete with the protected LRU
+				victim = protectedSegment.peekFirst();
+			}
+			if (victim == null) {
+				victim = candidate != null ? candidate : window.peekFirst();
+			} else if (candidate != null
+					&& sketch.frequency(candidate.key.hashCode()) <= sketch.frequency(victim.key.hashCode())) {
+				// the candidate is not more popular than the victim, reject it instead
+				victim = candidate;
+			}
+			removeFromPolicy(victim);
+			if (data.remove(victim.key, victim)) {
+				evictionCount.increment();
+			}
+		}
+	}
+
+	/** unlinks the node from every deque, caller holds the eviction lock */
+	private void removeFromPolicy(Node<K, V> node) {
+		writeOrder.unlink(node);
+		switch (node.segment) {
+			case Node.WINDOW:
+				window.unlink(node);
+				windowSize--;
+				break;
+			case Node.PROBATION:
+				probation.unlink(node);
+				break;
+			case Node.PROTECTED:
+				protectedSegment.unlink(node);
+				protectedSize--;
+				break;
+			default:
+				return;
+		}
+		node.segment = Node.REMOVED;
+		weightedSize--;
+	}
+
+	private boolean hasExpired(Node<K, V> node, long now) {
+		return now - node.writeTime >= expiryNanos;
+	}
+
+	/**
+	 * A cached value together with its write time, linked into the write-order deque and
+	 * into the access-order deque of its policy segment.
+	 */
+	static final class Node<K, V> {
+
+		static final int REMOVED = 0;
+		static final int WINDOW = 1;
+		static final int PROBATION = 2;
+		static final int PROTECTED = 3;
+
+		final K key;
+		final V value;
+		final long writeTime;
+
+		/** the links and segment below are guarded by the eviction lock */
+		Node<K, V> writePrevious;
+		Node<K, V> writeNext;
+		Node<K, V> accessPrevious;
+		Node<K, V> accessNext;
+		int segment = REMOVED;
+
+		Node(K key, V value, long writeTime) {
+			this.key = key;
+			this.value = value;
+			this.writeTime = writeTime;
+		}
+	}
+
+	/**
+	 * Intrusive doubly linked list of nodes in write order, oldest first. Not thread-safe.
+	 */
+	static final class WriteOrderDeque<K, V> {
+
+		private Node<K, V> first;
+		private Node<K, V> last;
+
+		Node<K, V> peekFirst() {
+			return first;
+		}
+
+		void linkLast(Node<K, V> node) {
+			node.writePrevious = last;
+			node.writeNext = null;
+			if (last == null) {
+				first = node;
+			} else {
+				last.writeNext = node;
+			}
+			last = node;
+		}
+
+		void unlink(Node<K, V> node) {
+			if (node.writePrevious == null && first != node) {
+				// already unlinked
+				return;
+			}
+			if (node.writePrevious == null) {
+				first = node.writeNext;
+			} else {
+				node.writePrevious.writeNext = node.writeNext;
+			}
+			if (node.writeNext == null) {
+				last = node.writePrevious;
+			} else {
+				node.writeNext.writePrevious = node.writePrevious;
+			}
+			node.writePrevious = null;
+			node.writeNext = null;
+		}
+	}
+
+	/**
+	 * Intrusive doubly linked list of nodes in access order, least recently used first.
+	 * Not thread-safe.
+	 */
+	static final class AccessOrderDeque<K, V> {
+
+		private Node<K, V> first;
+		private Node<K, V> last;
+
+		Node<K, V> peekFirst() {
+			return first;
+		}
+
+		Node<K, V> peekLast() {
+			return last;
+		}
+
+		void linkLast(Node<K, V> node) {
+			node.accessPrevious = last;
+			node.accessNext = null;
+			if (last == null) {
+				first = node;
+			} else {
+				last.accessNext = node;
+			}
+			last = node;
+		}
+
+		void moveToLast(Node<K, V> node) {
+			if (node != last) {
+				unlink(node);
+				linkLast(node);
+			}
+		}
+
+		void unlink(Node<K, V> node) {
+			if (node.accessPrevious == null) {
+				first = node.accessNext;
+			} else {
+				node.accessPrevious.accessNext = node.accessNext;
+			}
+			if (node.accessNext == null) {
+				last = node.accessPrevious;
+			} else {
+				node.accessNext.accessPrevious = node.accessPrevious;
+			}
+			node.accessPrevious = null;
+			node.accessNext = null;
+		}
+	}
+}
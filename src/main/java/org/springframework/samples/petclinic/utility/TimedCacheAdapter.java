@@ -0,0 +1,71 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Spring {@link org.springframework.cache.Cache} view of a {@link TimedCache}, used for
+ * {@code @Cacheable} and the other caching annotations. Lookups, loads and evictions go
+ * through the engine and show up in its statistics.
+ */
+public class TimedCacheAdapter extends AbstractValueAdaptingCache {
+
+	private final TimedCache<Object, Object> cache;
+
+	/**
+	 * @param allowNullValues whether {@code null} results are cached, as a marker value
+	 * the engine stores like any other
+	 */
+	public TimedCacheAdapter(TimedCache<Object, Object> cache, boolean allowNullValues) {
+		super(allowNullValues);
+		this.cache = cache;
+	}
+
+	@Override
+	public String getName() {
+		return cache.getName();
+	}
+
+	@Override
+	public TimedCache<Object, Object> getNativeCache() {
+		return cache;
+	}
+
+	@Override
+	protected Object lookup(Object key) {
+		return cache.getIfPresent(key);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T get(Object key, Callable<T> valueLoader) {
+		return (T) fromStoreValue(cache.get(key, k -> {
+			try {
+				return toStoreValue(valueLoader.call());
+			} catch (Exception e) {
+				throw new ValueRetrievalException(k, valueLoader, e);
+			}
+		}));
+	}
+
+	@Override
+	public void put(Object key, Object value) {
+		cache.put(key, toStoreValue(value));
+	}
+
+	@Override
+	public ValueWrapper putIfAbsent(Object key, Object value) {
+		return toValueWrapper(cache.putIfAbsent(key, toStoreValue(value)));
+	}
+
+	@Override
+	public void evict(Object key) {
+		cache.invalidate(key);
+	}
+
+	@Override
+	public void clear() {
+		cache.invalidateAll();
+	}
+}
@@ -0,0 +1,27 @@
+package org.springframework.samples.petclinic.utility;
+
+/**
+ * Statistics of one {@link TimedCache}, registered by the {@link TimedCacheManager} with
+ * the platform MBean server as
+ * {@code org.springframework.samples.petclinic:type=CacheStatistics,name=<cache name>}.
+ * The counts are the ones of {@link CacheStats}, read when the attribute is.
+ */
+public interface TimedCacheMXBean {
+
+	long getHitCount();
+
+	long getMissCount();
+
+	double getHitRate();
+
+	long getLoadSuccessCount();
+
+	long getLoadFailureCount();
+
+	long getEvictionCount();
+
+	long getExpirationCount();
+
+	long getSize();
+
+}
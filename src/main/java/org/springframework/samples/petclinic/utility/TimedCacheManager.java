@@ -0,0 +1,209 @@
+package org.springframework.samples.petclinic.utility;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link CacheManager} whose caches are all {@link TimedCache}s sharing one set of
+ * {@link CacheExecutors}, so caching annotations such as {@code @Cacheable("vets")} and
+ * hand-written caches such as {@link PetTimedCache} run on the same engine and report
+ * the same metrics, tagged with the cache name.
+ * <p>
+ * Caches listed in {@link TimedCacheManagerProperties#getSpecs()} are created up front
+ * with their own settings, other names are created with default settings on first use.
+ * Code that needs typed access creates its cache with
+ * {@link #createCache(String, TimedCacheProperties)}; the annotations then see the same
+ * entries, except that such caches do not store {@code null}.
+ * <p>
+ * Unless disabled with {@code petclinic.cache.jmx-enabled=false}, the statistics of every
+ * cache are also available over JMX as a {@link TimedCacheMXBean}, as they were for the
+ * JCache caches this manager replaces. If another manager in the same JVM, e.g. of a
+ * second application context, already registered a cache of the same name, that one
+ * keeps the name.
+ */
+@Component
+public class TimedCacheManager implements CacheManager, MeterBinder, DisposableBean {
+
+	private final static Logger log = LoggerFactory.getLogger(TimedCacheManager.class);
+
+	private final ConcurrentMap<String, TimedCacheAdapter> caches = new ConcurrentHashMap<>();
+	private final CacheExecutors executors;
+	private final List<MeterRegistry> registries = new ArrayList<>();
+
+	/** {@code null} if JMX is disabled */
+	private final MBeanServer mBeanServer;
+	/** guarded by {@code this} */
+	private final List<ObjectName> mBeans = new ArrayList<>();
+
+	/**
+	 * Creates a manager that does not register its caches with JMX.
+	 */
+	public TimedCacheManager(CacheExecutors executors) {
+		this(executors, null);
+	}
+
+	private TimedCacheManager(CacheExecutors executors, MBeanServer mBeanServer) {
+		this.executors = executors;
+		this.mBeanServer = mBeanServer;
+	}
+
+	@Autowired
+	public TimedCacheManager(TimedCacheManagerProperties properties, CacheExecutors executors) {
+		this(executors, properties.isJmxEnabled() ? ManagementFactory.getPlatformMBeanServer() : null);
+		properties.getSpecs().forEach((name, spec) -> register(new TimedCache<>(name, spec, executors), true));
+	}
+
+	/**
+	 * Creates and registers a cache with the given settings.
+	 * @throws IllegalStateException if a cache with that name already exists
+	 */
+	@SuppressWarnings("unchecked")
+	public <K, V> TimedCache<K, V> createCache(String name, TimedCacheProperties properties) {
+		TimedCache<K, V> cache = new TimedCache<>(name, properties, executors);
+		try {
+			register((TimedCache<Object, Object>) (TimedCache<?, ?>) cache, false);
+		} catch (IllegalStateException e) {
+			cache.close();
+			throw e;
+		}
+		return cache;
+	}
+
+	@Override
+	public Cache getCache(String name) {
+		TimedCacheAdapter cache = caches.get(name);
+		if (cache != null) {
+			return cache;
+		}
+		TimedCache<Object, Object> created = new TimedCache<>(name, new TimedCacheProperties(), executors);
+		try {
+			return register(created, true);
+		} catch (IllegalStateException e) {
+			// created concurrently
+			created.close();
+			return caches.get(name);
+		}
+	}
+
+	@Override
+	public Collection<String> getCacheNames() {
+		return Collections.unmodifiableSet(caches.keySet());
+	}
+
+	public CacheExecutors getExecutors() {
+		return executors;
+	}
+
+	@Override
+	public synchronized void bindTo(MeterRegistry registry) {
+		registries.add(registry);
+		caches.values().forEach(cache -> cache.getNativeCache().bindTo(registry));
+	}
+
+	@Override
+	public synchronized void destroy() {
+		caches.values().forEach(cache -> cache.getNativeCache().close());
+		for (ObjectName name : mBeans) {
+			try {
+				mBeanServer.unregisterMBean(name);
+			} catch (JMException e) {
+				log.warn("Unregistering {} failed", name, e);
+			}
+		}
+		mBeans.clear();
+	}
+
+	private synchronized TimedCacheAdapter register(TimedCache<Object, Object> cache, boolean allowNullValues) {
+		TimedCacheAdapter adapter = new TimedCacheAdapter(cache, allowNullValues);
+		if (caches.putIfAbsent(cache.getName(), adapter) != null) {
+			throw new IllegalStateException("Cache " + cache.getName() + " already exists");
+		}
+		registries.forEach(cache::bindTo);
+		if (mBeanServer != null) {
+			registerMBean(cache);
+		}
+		return adapter;
+	}
+
+	private void registerMBean(TimedCache<?, ?> cache) {
+		try {
+			ObjectName name = new ObjectName("org.springframework.samples.petclinic:type=CacheStatistics,name="
+					+ ObjectName.quote(cache.getName()));
+			mBeanServer.registerMBean(new Statistics(cache), name);
+			mBeans.add(name);
+		} catch (InstanceAlreadyExistsException e) {
+			log.debug("Statistics of cache {} are already registered by another cache manager", cache.getName());
+		} catch (JMException e) {
+			log.warn("Registering the statistics of cache {} with JMX failed", cache.getName(), e);
+		}
+	}
+
+	private static final class Statistics implements TimedCacheMXBean {
+
+		private final TimedCache<?, ?> cache;
+
+		Statistics(TimedCache<?, ?> cache) {
+			this.cache = cache;
+		}
+
+		@Override
+		public long getHitCount() {
+			return cache.stats().getHitCount();
+		}
+
+		@Override
+		public long getMissCount() {
+			return cache.stats().getMissCount();
+		}
+
+		@Override
+		public double getHitRate() {
+			return cache.stats().getHitRate();
+		}
+
+		@Override
+		public long getLoadSuccessCount() {
+			return cache.stats().getLoadSuccessCount();
+		}
+
+		@Override
+		public long getLoadFailureCount() {
+			return cache.stats().getLoadFailureCount();
+		}
+
+		@Override
+		public long getEvictionCount() {
+			return cache.stats().getEvictionCount();
+		}
+
+		@Override
+		public long getExpirationCount() {
+			return cache.stats().getExpirationCount();
+		}
+
+		@Override
+		public long getSize() {
+			return cache.size();
+		}
+
+	}
+}
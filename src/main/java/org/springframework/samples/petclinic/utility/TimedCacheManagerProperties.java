@@ -0,0 +1,43 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Settings of the {@link TimedCacheManager}, bound from {@code petclinic.cache.*}.
+ */
+@Component
+@ConfigurationProperties(prefix = "petclinic.cache")
+public class TimedCacheManagerProperties {
+
+	/**
+	 * Settings per cache name, e.g. {@code petclinic.cache.specs.vets.expiry=1h}. These
+	 * caches are created at startup, others on first use with default settings.
+	 */
+	private Map<String, TimedCacheProperties> specs = new LinkedHashMap<>();
+
+	/**
+	 * Whether the statistics of every cache are registered with the platform MBean server,
+	 * see {@link TimedCacheMXBean}.
+	 */
+	private boolean jmxEnabled = true;
+
+	public Map<String, TimedCacheProperties> getSpecs() {
+		return specs;
+	}
+
+	public void setSpecs(Map<String, TimedCacheProperties> specs) {
+		this.specs = specs;
+	}
+
+	public boolean isJmxEnabled() {
+		return jmxEnabled;
+	}
+
+	public void setJmxEnabled(boolean jmxEnabled) {
+		this.jmxEnabled = jmxEnabled;
+	}
+}
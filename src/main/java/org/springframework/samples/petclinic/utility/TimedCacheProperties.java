@@ -0,0 +1,106 @@
+package org.springframework.samples.petclinic.utility;
+
+import java.time.Duration;
+
+/**
+ * Settings of a {@link TimedCache}.
+ */
+public class TimedCacheProperties {
+
+	/**
+	 * Time after which a cached entry expires, counted from when it was written. 0 keeps
+	 * entries until they are evicted or invalidated.
+	 */
+	private Duration expiry = Duration.ofSeconds(10);
+
+	/**
+	 * Maximum number of cached entries. Beyond that, entries are evicted by a W-TinyLFU
+	 * policy.
+	 */
+	private long maximumSize = 10_000;
+
+	/**
+	 * Time for which a key that has no value is remembered as missing.
+	 */
+	private Duration missingExpiry = Duration.ofSeconds(2);
+
+	/**
+	 * Maximum number of keys remembered as missing, the oldest are dropped first. 0
+	 * disables negative caching.
+	 */
+	private int missingMaximumSize = 1_000;
+
+	/**
+	 * How long a request waits for another request that is already loading the same key.
+	 * Waits indefinitely if not set.
+	 */
+	private Duration loadTimeout;
+
+	/**
+	 * Fraction of the expiry after which a hit schedules an asynchronous reload of the
+	 * entry. 0 disables refresh-ahead.
+	 */
+	private double refreshAheadFactor = 0;
+
+	/**
+	 * Maximum number of entries reloaded for refresh-ahead at the same time, further
+	 * refreshes are skipped.
+	 */
+	private int maxConcurrentRefreshes = 8;
+
+	public Duration getExpiry() {
+		return expiry;
+	}
+
+	public void setExpiry(Duration expiry) {
+		this.expiry = expiry;
+	}
+
+	public long getMaximumSize() {
+		return maximumSize;
+	}
+
+	public void setMaximumSize(long maximumSize) {
+		this.maximumSize = maximumSize;
+	}
+
+	public Duration getMissingExpiry() {
+		return missingExpiry;
+	}
+
+	public void setMissingExpiry(Duration missingExpiry) {
+		this.missingExpiry = missingExpiry;
+	}
+
+	public int getMissingMaximumSize() {
+		return missingMaximumSize;
+	}
+
+	public void setMissingMaximumSize(int missingMaximumSize) {
+		this.missingMaximumSize = missingMaximumSize;
+	}
+
+	public Duration getLoadTimeout() {
+		return loadTimeout;
+	}
+
+	public void setLoadTimeout(Duration loadTimeout) {
+		this.loadTimeout = loadTimeout;
+	}
+
+	public double getRefreshAheadFactor() {
+		return refreshAheadFactor;
+	}
+
+	public void setRefreshAheadFactor(double refreshAheadFactor) {
+		this.refreshAheadFactor = refreshAheadFactor;
+	}
+
+	public int getMaxConcurrentRefreshes() {
+		return maxConcurrentRefreshes;
+	}
+
+	public void setMaxConcurrentRefreshes(int maxConcurrentRefreshes) {
+		this.maxConcurrentRefreshes = maxConcurrentRefreshes;
+	}
+}
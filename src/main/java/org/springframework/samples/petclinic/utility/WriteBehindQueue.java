@@ -0,0 +1,208 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.samples.petclinic.owner.Pet;
+import org.springframework.samples.petclinic.owner.PetRepository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Dirty pets waiting to be written by {@link PetTimedCache} in write-behind mode.
+ * <p>
+ * Pets are coalesced by id, so a pet saved several times before a flush is written once
+ * with its latest state. A flush writes batches of pets through
+ * {@link PetRepository#saveAll(Iterable)}, i.e. in one transaction and, with
+ * {@code hibernate.jdbc.batch_size} set, in JDBC batches. Flushes run every configured
+ * delay and as soon as a full batch is pending, on the loader executor since they block
+ * on the database; the scheduler only triggers them. When the queue is full the saving thread
+ * flushes itself, which pushes back on producers instead of growing without bound.
+ * <p>
+ * A pet stays visible through {@link #pending(Integer)} until it has been written. A pet
+ * that cannot be written, even on its own, is dropped and its id handed to the
+ * {@code onDropped} callback once it is no longer pending, so the cache can forget the
+ * unsaved state.
+ */
+final class WriteBehindQueue {
+
+	private final static Logger log = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+	private final PetRepository repository;
+	private final Executor executor;
+	private final Consumer<Integer> onDropped;
+	private final ScheduledFuture<?> tick;
+	private final int batchSize;
+	private final int maxPending;
+
+	/** guards {@link #pending} */
+	private final ReentrantLock lock = new ReentrantLock();
+	private final LinkedHashMap<Integer, Pet> pending = new LinkedHashMap<>();
+
+	/** serialises flushes so an older state of a pet can never be written after a newer one */
+	private final ReentrantLock flushLock = new ReentrantLock();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+	WriteBehindQueue(PetRepository repository, ScheduledExecutorService scheduler, Executor executor, int batchSize,
+			int maxPending, long delayInMillis, Consumer<Integer> onDropped) {
+		if (batchSize <= 0 || maxPending < batchSize) {
+			throw new IllegalArgumentException(
+					"write-behind needs 0 < batchSize <= maxPending: " + batchSize + ", " + maxPending);
+		}
+		this.repository = repository;
+		this.executor = executor;
+		this.onDropped = onDropped;
+		this.batchSize = batchSize;
+		this.maxPending = maxPending;
+		this.tick = scheduler.scheduleWithFixedDelay(this::scheduleFlush, delayInMillis, delayInMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	void enqueue(Pet pet) {
+		int size;
+		lock.lock();
+		try {
+			pending.put(pet.getId(), pet);
+			size = pending.size();
+		} finally {
+			lock.unlock();
+		}
+		if (size >= maxPending) {
+			// backpressure: the producer pays for the flush
+			flush();
+		} else if (size >= batchSize) {
+			scheduleFlush();
+		}
+	}
+
+	/**
+	 * @return the pet waiting to be written under the given id, or {@code null}
+	 */
+	Pet pending(Integer id) {
+		lock.lock();
+		try {
+			return pending.get(id);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	int size() {
+		lock.lock();
+		try {
+			return pending.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes every pet that is pending when the flush starts.
+	 */
+	void flush() {
+		flushLock.lock();
+		try {
+			flushScheduled.set(false);
+			int remaining = size();
+			while (remaining > 0) {
+				List<Pet> batch = nextBatch();
+				if (batch.isEmpty()) {
+					return;
+				}
+				List<Pet> dropped = write(batch);
+				List<Integer> forgotten = new ArrayList<>(dropped.size());
+				lock.lock();
+				try {
+					for (Pet pet : batch) {
+						// keep the pet if it was saved again while the batch was written
+						if (pending.remove(pet.getId(), pet) && dropped.contains(pet)) {
+							forgotten.add(pet.getId());
+						}
+					}
+				} finally {
+					lock.unlock();
+				}
+				// only now, or a load could find the dropped pet still pending
+				forgotten.forEach(onDropped);
+				remaining -= batch.size();
+			}
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	void close(boolean flush) {
+		tick.cancel(false);
+		if (flush) {
+			flush();
+		} else if (size() > 0) {
+			log.warn("Discarding {} unwritten pets on shutdown", size());
+		}
+	}
+
+	private List<Pet> nextBatch() {
+		lock.lock();
+		try {
+			List<Pet> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+			Iterator<Pet> pets = pending.values().iterator();
+			while (pets.hasNext() && batch.size() < batchSize) {
+				batch.add(pets.next());
+			}
+			return batch;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the pets that could not be written
+	 */
+	private List<Pet> write(List<Pet> batch) {
+		try {
+			repository.saveAll(batch);
+			return Collections.emptyList();
+		} catch (RuntimeException e) {
+			log.warn("Writing a batch of {} pets failed, retrying them one by one", batch.size(), e);
+			List<Pet> dropped = new ArrayList<>();
+			for (Pet pet : batch) {
+				try {
+					repository.save(pet);
+				} catch (RuntimeException single) {
+					log.error("Dropping write-behind of pet {}", pet.getId(), single);
+					dropped.add(pet);
+				}
+			}
+			return dropped;
+		}
+	}
+
+	private void scheduleFlush() {
+		if (flushScheduled.compareAndSet(false, true)) {
+			try {
+				executor.execute(this::flushQuietly);
+			} catch (RejectedExecutionException e) {
+				// shutting down, close() flushes on the calling thread
+				flushScheduled.set(false);
+			}
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			log.error("Write-behind flush failed", e);
+		}
+	}
+}
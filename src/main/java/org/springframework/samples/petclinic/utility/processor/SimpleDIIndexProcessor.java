@@ -0,0 +1,245 @@
+package org.springframework.samples.petclinic.utility.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Records the constructors {@code SimpleDIContainer} would autowire into a generated
+ * {@value #INDEX_CLASS} class, which calls them directly instead of through reflection.
+ * <p>
+ * A class is indexed if it has a constructor annotated with {@code @Autowired}, or if it
+ * is a {@code @Component}, directly or through an annotation such as {@code @Service},
+ * with a single public constructor; the same constructor the container would choose. The
+ * class and the constructor must be public, and the parameters must not be primitives.
+ * Other classes are still autowired through reflection.
+ * <p>
+ * The processor is registered through {@code META-INF/services}, so it is discovered
+ * alongside any other processor on the class path, and only runs when compiling with
+ * {@code -A}{@value #ENABLED_OPTION}{@code =true}, which the build passes for the main
+ * sources only. It writes the index in the first round, which holds every source given
+ * to the compiler, so that the index itself goes through a regular round like any other
+ * generated source. Classes generated by other processors in later rounds are not
+ * indexed, a note names them, and they are autowired through reflection. The names of
+ * the indexed classes are also written to {@value #CLASS_LIST}; when only some sources
+ * are recompiled, the classes indexed by the previous build that were not recompiled are
+ * indexed again from their class files, and those that no longer exist are dropped.
+ */
+@SupportedAnnotationTypes("*")
+@SupportedOptions(SimpleDIIndexProcessor.ENABLED_OPTION)
+public class SimpleDIIndexProcessor extends AbstractProcessor {
+
+	static final String ENABLED_OPTION = "simpledi.index";
+
+	static final String INDEX_PACKAGE = "org.springframework.samples.petclinic.utility";
+
+	static final String INDEX_CLASS = INDEX_PACKAGE + ".SimpleDIIndex";
+
+	private static final String AUTOWIRED = "org.springframework.beans.factory.annotation.Autowired";
+
+	private static final String COMPONENT = "org.springframework.stereotype.Component";
+
+	static final String CLASS_LIST = "META-INF/simple-di-index";
+
+	/** by class name, so the index is written in a stable order */
+	private final Map<String, ExecutableElement> constructors = new TreeMap<>();
+
+	/** classes whose sources are compiled, whether indexed or not */
+	private final Set<String> compiled = new HashSet<>();
+
+	private boolean written;
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		if (!Boolean.parseBoolean(processingEnv.getOptions().get(ENABLED_OPTION))) {
+			return false;
+		}
+		if (roundEnv.processingOver()) {
+			return false;
+		}
+		for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+			if (type.getQualifiedName().contentEquals(INDEX_CLASS)) {
+				continue;
+			}
+			int indexed = constructors.size();
+			collect(type);
+			if (written && constructors.size() > indexed) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+						type.getQualifiedName() + " was generated after " + INDEX_CLASS
+								+ ", it is autowired through reflection", type);
+			}
+		}
+		if (!written) {
+			written = true;
+			try {
+				addPreviouslyIndexed();
+				write();
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"Cannot write " + INDEX_CLASS + ": " + e);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Indexes the classes of the previous build's list that are not being compiled.
+	 */
+	private void addPreviouslyIndexed() throws IOException {
+		List<String> previous = new ArrayList<>();
+		try {
+			FileObject list = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", CLASS_LIST);
+			try (BufferedReader in = new BufferedReader(list.openReader(true))) {
+				for (String line = in.readLine(); line != null; line = in.readLine()) {
+					previous.add(line.trim());
+				}
+			}
+		} catch (FileNotFoundException | NoSuchFileException e) {
+			// a clean build
+			return;
+		}
+		for (String name : previous) {
+			if (name.isEmpty() || compiled.contains(name)) {
+				continue;
+			}
+			TypeElement type = processingEnv.getElementUtils().getTypeElement(name);
+			if (type != null) {
+				add(type);
+			}
+		}
+	}
+
+	private void collect(TypeElement type) {
+		for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+			collect(nested);
+		}
+		compiled.add(type.getQualifiedName().toString());
+		add(type);
+	}
+
+	private void add(TypeElement type) {
+		if (type.getKind() != ElementKind.CLASS || !type.getModifiers().contains(Modifier.PUBLIC)
+				|| type.getModifiers().contains(Modifier.ABSTRACT)
+				|| (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC))) {
+			return;
+		}
+		ExecutableElement constructor = chooseConstructor(type);
+		if (constructor != null && constructor.getModifiers().contains(Modifier.PUBLIC)
+				&& constructor.getParameters().stream().noneMatch(parameter -> parameter.asType().getKind().isPrimitive())
+				&& constructor.getTypeParameters().isEmpty()) {
+			constructors.put(type.getQualifiedName().toString(), constructor);
+		}
+	}
+
+	private ExecutableElement chooseConstructor(TypeElement type) {
+		List<ExecutableElement> declared = ElementFilter.constructorsIn(type.getEnclosedElements());
+		for (ExecutableElement constructor : declared) {
+			if (isAnnotated(constructor, AUTOWIRED, new HashSet<>())) {
+				return constructor;
+			}
+		}
+		if (!isAnnotated(type, COMPONENT, new HashSet<>())) {
+			return null;
+		}
+		ExecutableElement chosen = null;
+		for (ExecutableElement constructor : declared) {
+			if (constructor.getModifiers().contains(Modifier.PUBLIC)) {
+				if (chosen != null) {
+					return null;
+				}
+				chosen = constructor;
+			}
+		}
+		return chosen;
+	}
+
+	/**
+	 * @return whether the element carries the annotation, directly or as a meta-annotation
+	 */
+	private boolean isAnnotated(Element element, String annotation, Set<String> visited) {
+		for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+			TypeElement annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+			String name = annotationType.getQualifiedName().toString();
+			if (name.equals(annotation)
+					|| (visited.add(name) && !name.startsWith("java.") && isAnnotated(annotationType, annotation, visited))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void write() throws IOException {
+		Element[] originating = constructors.values().stream().map(Element::getEnclosingElement)
+				.toArray(Element[]::new);
+		FileObject list = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", CLASS_LIST,
+				originating);
+		try (PrintWriter out = new PrintWriter(list.openWriter())) {
+			constructors.keySet().forEach(out::println);
+		}
+		JavaFileObject file = processingEnv.getFiler().createSourceFile(INDEX_CLASS, originating);
+		try (PrintWriter out = new PrintWriter(file.openWriter())) {
+			out.println("package " + INDEX_PACKAGE + ";");
+			out.println();
+			out.println("/**");
+			out.println(" * Generated by " + SimpleDIIndexProcessor.class.getSimpleName() + ", do not edit.");
+			out.println(" */");
+			out.println("@SuppressWarnings({\"rawtypes\", \"unchecked\"})");
+			out.println("final class SimpleDIIndex implements java.util.function.Supplier<java.util.Map<Class<?>, IndexedConstructor>> {");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic java.util.Map<Class<?>, IndexedConstructor> get() {");
+			out.println("\t\tjava.util.Map<Class<?>, IndexedConstructor> index = new java.util.HashMap<>();");
+			for (ExecutableElement constructor : constructors.values()) {
+				String type = ((TypeElement) constructor.getEnclosingElement()).getQualifiedName().toString();
+				List<String> parameterTypes = new ArrayList<>();
+				List<String> arguments = new ArrayList<>();
+				for (VariableElement parameter : constructor.getParameters()) {
+					String parameterType = erasure(parameter);
+					arguments.add("(" + parameterType + ") args[" + parameterTypes.size() + "]");
+					parameterTypes.add(parameterType + ".class");
+				}
+				out.println("\t\tindex.put(" + type + ".class, new IndexedConstructor(new Class<?>[] {"
+						+ String.join(", ", parameterTypes) + "},");
+				out.println("\t\t\t\targs -> new " + type + "(" + String.join(", ", arguments) + ")));");
+			}
+			out.println("\t\treturn index;");
+			out.println("\t}");
+			out.println("}");
+		}
+	}
+
+	private String erasure(VariableElement parameter) {
+		return processingEnv.getTypeUtils().erasure(parameter.asType()).toString();
+	}
+}
@@ -19,18 +19,36 @@ package org.springframework.samples.petclinic;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.samples.petclinic.utility.TimedCacheAdapter;
+import org.springframework.samples.petclinic.utility.TimedCacheManager;
+import org.springframework.samples.petclinic.utility.TimedCacheManagerProperties;
 import org.springframework.samples.petclinic.vet.VetRepository;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 @SpringBootTest
 class PetclinicIntegrationTests {
 
 	@Autowired
 	private VetRepository vets;
 
+	@Autowired
+	private TimedCacheManager cacheManager;
+
+	@Autowired
+	private TimedCacheManagerProperties cacheProperties;
+
 	@Test
 	void testFindAll() throws Exception {
 		vets.findAll();
 		vets.findAll(); // served from cache
+		TimedCacheAdapter cache = (TimedCacheAdapter) cacheManager.getCache("vets");
+		assertThat(cache.getNativeCache().stats().getHitCount()).isGreaterThanOrEqualTo(1);
+	}
+
+	@Test
+	void vetsAreCachedWithoutExpiry() {
+		assertThat(cacheProperties.getSpecs().get("vets").getExpiry()).isZero();
 	}
 
 }
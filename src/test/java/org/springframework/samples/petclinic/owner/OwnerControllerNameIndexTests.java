@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.samples.petclinic.owner;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasProperty;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+
+/**
+ * Test class for {@link OwnerController} searching with the {@link OwnerNameIndex}
+ */
+@WebMvcTest(controllers = OwnerController.class, properties = "petclinic.owners.name-index=true",
+		includeFilters = @ComponentScan.Filter(value = OwnerNameIndex.class, type = FilterType.ASSIGNABLE_TYPE))
+class OwnerControllerNameIndexTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private OwnerNameIndex nameIndex;
+
+	@MockBean
+	private OwnerRepository owners;
+
+	@BeforeEach
+	void setup() {
+		nameIndex.load(Arrays.asList(new Object[] { 1, "Franklin" }, new Object[] { 2, "Davis" },
+				new Object[] { 4, "Davis" }));
+	}
+
+	@Test
+	void testProcessFindFormIgnoresCaseLikeTheDatabase() throws Exception {
+		mockMvc.perform(get("/owners").param("lastName", "fRANK")).andExpect(status().is3xxRedirection())
+				.andExpect(view().name("redirect:/owners/1"));
+		verify(this.owners, never()).findPageByLastName(anyString(), any());
+	}
+
+	@Test
+	void testProcessFindFormReadsThePageOfTheIndexById() throws Exception {
+		given(this.owners.findByIdIn(Arrays.asList(2, 4)))
+				.willReturn(Arrays.asList(owner(4, "Davis"), owner(2, "Davis")));
+		mockMvc.perform(get("/owners").param("lastName", "davis")).andExpect(status().isOk())
+				.andExpect(view().name("owners/ownersList"))
+				.andExpect(model().attribute("selections",
+						contains(hasProperty("id", is(2)), hasProperty("id", is(4)))))
+				.andExpect(model().attributeDoesNotExist("next", "previous"));
+		verify(this.owners, never()).findPageByLastName(anyString(), any());
+	}
+
+	@Test
+	void testProcessFindFormContinuesAfterTheCursorInTheIndex() throws Exception {
+		given(this.owners.findByIdIn(Arrays.asList(4, 1)))
+				.willReturn(Arrays.asList(owner(1, "Franklin"), owner(4, "Davis")));
+		mockMvc.perform(get("/owners").param("afterLastName", "Davis").param("afterId", "2"))
+				.andExpect(status().isOk()).andExpect(view().name("owners/ownersList"))
+				.andExpect(model().attribute("selections",
+						contains(hasProperty("id", is(4)), hasProperty("id", is(1)))))
+				.andExpect(model().attribute("previous", hasProperty("id", is(4))))
+				.andExpect(model().attributeDoesNotExist("next"));
+		verify(this.owners, never()).findPageByLastNameAfter(anyString(), anyString(), anyInt(), any());
+	}
+
+	@Test
+	void testProcessFindFormNoOwnersFoundInTheIndex() throws Exception {
+		mockMvc.perform(get("/owners").param("lastName", "schultz")).andExpect(status().isOk())
+				.andExpect(view().name("owners/findOwners"));
+		verify(this.owners, never()).findPageByLastName(anyString(), any());
+	}
+
+	private static Owner owner(int id, String lastName) {
+		Owner owner = new Owner();
+		owner.setId(id);
+		owner.setLastName(lastName);
+		return owner;
+	}
+
+}
@@ -17,6 +17,7 @@
 package org.springframework.samples.petclinic.owner;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -28,14 +29,15 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.samples.petclinic.visit.Visit;
-import org.springframework.samples.petclinic.visit.VisitRepository;
 import org.springframework.test.web.servlet.MockMvc;
 
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.hasProperty;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -59,9 +61,6 @@ class OwnerControllerTests {
 	@MockBean
 	private OwnerRepository owners;
 
-	@MockBean
-	private VisitRepository visits;
-
 	private Owner george;
 
 	@BeforeEach
@@ -82,9 +81,11 @@ class OwnerControllerTests {
 		max.setBirthDate(LocalDate.now());
 		george.setPetsInternal(Collections.singleton(max));
 		given(this.owners.findById(TEST_OWNER_ID)).willReturn(george);
-		Visit visit = new Visit();
-		visit.setDate(LocalDate.now());
-		given(this.visits.findByPetId(max.getId())).willReturn(Collections.singletonList(visit));
+		OwnerDetails.VisitDetails visit = new OwnerDetails.VisitDetails(LocalDate.now(), "rabies shot");
+		OwnerDetails.PetDetails maxDetails = new OwnerDetails.PetDetails(max.getId(), max.getName(),
+				max.getBirthDate(), dog.getName(), Collections.singletonList(visit));
+		given(this.owners.findDetailsById(TEST_OWNER_ID)).willReturn(new OwnerDetails(TEST_OWNER_ID, "George",
+				"Franklin", "110 W. Liberty St.", "Madison", "6085551023", Collections.singletonList(maxDetails)));
 	}
 
 	@Test
@@ -118,13 +119,71 @@ class OwnerControllerTests {
 
 	@Test
 	void testProcessFindFormSuccess() throws Exception {
-		given(this.owners.findByLastName("")).willReturn(Lists.newArrayList(george, new Owner()));
-		mockMvc.perform(get("/owners")).andExpect(status().isOk()).andExpect(view().name("owners/ownersList"));
+		given(this.owners.findPageByLastName(eq(""), any())).willReturn(Lists.newArrayList(george, new Owner()));
+		mockMvc.perform(get("/owners")).andExpect(status().isOk()).andExpect(view().name("owners/ownersList"))
+				.andExpect(model().attributeDoesNotExist("next", "previous"));
+	}
+
+	@Test
+	void testProcessFindFormLinksToTheNextPage() throws Exception {
+		List<Owner> moreThanAPage = new ArrayList<>();
+		for (int id = 1; id <= 21; id++) {
+			Owner owner = new Owner();
+			owner.setId(id);
+			owner.setLastName("Franklin");
+			moreThanAPage.add(owner);
+		}
+		given(this.owners.findPageByLastName(eq(""), any())).willReturn(moreThanAPage);
+		mockMvc.perform(get("/owners")).andExpect(status().isOk()).andExpect(view().name("owners/ownersList"))
+				.andExpect(model().attribute("selections", hasSize(20)))
+				.andExpect(model().attribute("next", hasProperty("id", is(20))))
+				.andExpect(model().attributeDoesNotExist("previous"));
+	}
+
+	@Test
+	void testProcessFindFormContinuesAfterTheCursor() throws Exception {
+		given(this.owners.findPageByLastNameAfter(eq(""), eq("Franklin"), eq(20), any()))
+				.willReturn(Lists.newArrayList(george));
+		mockMvc.perform(get("/owners").param("afterLastName", "Franklin").param("afterId", "20"))
+				.andExpect(status().isOk()).andExpect(view().name("owners/ownersList"))
+				.andExpect(model().attribute("previous", hasProperty("id", is(TEST_OWNER_ID))))
+				.andExpect(model().attributeDoesNotExist("next"));
+	}
+
+	@Test
+	void testProcessFindFormGoesBackBeforeTheCursor() throws Exception {
+		List<Owner> descending = new ArrayList<>();
+		for (int id = 40; id >= 20; id--) {
+			Owner owner = new Owner();
+			owner.setId(id);
+			owner.setLastName("Franklin");
+			descending.add(owner);
+		}
+		given(this.owners.findPageByLastNameBefore(eq(""), eq("Franklin"), eq(41), any())).willReturn(descending);
+		mockMvc.perform(get("/owners").param("beforeLastName", "Franklin").param("beforeId", "41"))
+				.andExpect(status().isOk()).andExpect(view().name("owners/ownersList"))
+				.andExpect(model().attribute("selections", hasSize(20)))
+				.andExpect(model().attribute("previous", hasProperty("id", is(21))))
+				.andExpect(model().attribute("next", hasProperty("id", is(40))));
+	}
+
+	@Test
+	void testProcessFindFormRejectsBothCursors() throws Exception {
+		mockMvc.perform(get("/owners").param("afterLastName", "Franklin").param("afterId", "20")
+				.param("beforeLastName", "Franklin").param("beforeId", "41")).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void testProcessFindFormRejectsHalfACursor() throws Exception {
+		mockMvc.perform(get("/owners").param("afterId", "20")).andExpect(status().isBadRequest());
+		mockMvc.perform(get("/owners").param("afterLastName", "Franklin")).andExpect(status().isBadRequest());
+		mockMvc.perform(get("/owners").param("beforeLastName", "Franklin")).andExpect(status().isBadRequest());
+		mockMvc.perform(get("/owners").param("beforeId", "41")).andExpect(status().isBadRequest());
 	}
 
 	@Test
 	void testProcessFindFormByLastName() throws Exception {
-		given(this.owners.findByLastName(george.getLastName())).willReturn(Lists.newArrayList(george));
+		given(this.owners.findPageByLastName(eq(george.getLastName()), any())).willReturn(Lists.newArrayList(george));
 		mockMvc.perform(get("/owners").param("lastName", "Franklin")).andExpect(status().is3xxRedirection())
 				.andExpect(view().name("redirect:/owners/" + TEST_OWNER_ID));
 	}
@@ -176,13 +235,13 @@ class OwnerControllerTests {
 				.andExpect(model().attribute("owner", hasProperty("city", is("Madison"))))
 				.andExpect(model().attribute("owner", hasProperty("telephone", is("6085551023"))))
 				.andExpect(model().attribute("owner", hasProperty("pets", not(empty()))))
-				.andExpect(model().attribute("owner", hasProperty("pets", new BaseMatcher<List<Pet>>() {
+				.andExpect(model().attribute("owner", hasProperty("pets", new BaseMatcher<List<OwnerDetails.PetDetails>>() {
 
 					@Override
 					public boolean matches(Object item) {
 						@SuppressWarnings("unchecked")
-						List<Pet> pets = (List<Pet>) item;
-						Pet pet = pets.get(0);
+						List<OwnerDetails.PetDetails> pets = (List<OwnerDetails.PetDetails>) item;
+						OwnerDetails.PetDetails pet = pets.get(0);
 						if (pet.getVisits().isEmpty()) {
 							return false;
 						}
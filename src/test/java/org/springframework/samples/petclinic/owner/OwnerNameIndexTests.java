@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Test class for {@link OwnerNameIndex}
+ */
+class OwnerNameIndexTests {
+
+	private OwnerNameIndex index;
+
+	@BeforeEach
+	void setup() {
+		OwnerRepository owners = mock(OwnerRepository.class);
+		given(owners.findAllLastNames()).willReturn(Arrays.asList(new Object[] { 1, "Franklin" },
+				new Object[] { 2, "Davis" }, new Object[] { 4, "Davis" }, new Object[] { 6, "Coleman" },
+				new Object[] { 10, "Estaban" }, new Object[] { 8, "Escobito" }));
+		index = new OwnerNameIndex(owners);
+		index.afterSingletonsInstantiated();
+	}
+
+	@Test
+	void shouldFindOwnersByLastNamePrefixOrderedByNameAndId() {
+		assertThat(index.findIds("Es", 10)).containsExactly(8, 10);
+		assertThat(index.findIds("davis", 10)).containsExactly(2, 4);
+		assertThat(index.findIds("", 3)).containsExactly(6, 2, 4);
+		assertThat(index.findIds("Schultz", 10)).isEmpty();
+	}
+
+	@Test
+	void shouldIgnoreCaseLikeTheLastNameColumn() {
+		index.put(3, "davis");
+		index.put(12, "DAVIS");
+		assertThat(index.findIds("DaV", 10)).containsExactly(2, 3, 4, 12);
+		assertThat(index.findIds("", 10)).containsExactly(6, 2, 3, 4, 12, 8, 10, 1);
+	}
+
+	@Test
+	void shouldReturnAtMostTheLimit() {
+		assertThat(index.findIds("D", 1)).containsExactly(2);
+	}
+
+	@Test
+	void shouldContinueAfterAndGoBackBeforeAnOwner() {
+		assertThat(index.findIdsAfter("", "Davis", 2, 3)).containsExactly(4, 8, 10);
+		assertThat(index.findIdsAfter("D", "Coleman", 6, 10)).containsExactly(2, 4);
+		assertThat(index.findIdsAfter("e", "davis", 4, 10)).containsExactly(8, 10);
+		assertThat(index.findIdsBefore("", "Escobito", 8, 3)).containsExactly(4, 2, 6);
+		assertThat(index.findIdsBefore("D", "Franklin", 1, 10)).containsExactly(4, 2);
+		assertThat(index.findIdsBefore("d", "Davis", 4, 10)).containsExactly(2);
+	}
+
+	@Test
+	void shouldFollowSavedOwners() {
+		index.put(11, "Schultz");
+		assertThat(index.findIds("Sch", 10)).containsExactly(11);
+		index.put(2, "Daviss");
+		assertThat(index.findIds("Davis", 10)).containsExactly(4, 2);
+		index.put(4, "Black");
+		assertThat(index.findIds("Davis", 10)).containsExactly(2);
+		assertThat(index.findIds("B", 10)).containsExactly(4);
+		assertThat(index.size()).isEqualTo(7);
+	}
+
+}
@@ -31,7 +31,11 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.FilterType;
+import org.springframework.samples.petclinic.utility.CacheExecutors;
 import org.springframework.samples.petclinic.utility.PetTimedCache;
+import org.springframework.samples.petclinic.utility.PetTimedCacheProperties;
+import org.springframework.samples.petclinic.utility.TimedCacheManager;
+import org.springframework.samples.petclinic.utility.TimedCacheManagerProperties;
 import org.springframework.test.web.servlet.MockMvc;
 
 /**
@@ -45,6 +49,10 @@ import org.springframework.test.web.servlet.MockMvc;
 	@ComponentScan.Filter(value = PetService.class, type = FilterType.ASSIGNABLE_TYPE),
 	@ComponentScan.Filter(value = LoggerConfig.class, type = FilterType.ASSIGNABLE_TYPE),
 	@ComponentScan.Filter(value = PetTimedCache.class, type = FilterType.ASSIGNABLE_TYPE),
+	@ComponentScan.Filter(value = PetTimedCacheProperties.class, type = FilterType.ASSIGNABLE_TYPE),
+	@ComponentScan.Filter(value = TimedCacheManager.class, type = FilterType.ASSIGNABLE_TYPE),
+	@ComponentScan.Filter(value = TimedCacheManagerProperties.class, type = FilterType.ASSIGNABLE_TYPE),
+	@ComponentScan.Filter(value = CacheExecutors.class, type = FilterType.ASSIGNABLE_TYPE),
 	}
 	)
 class PetControllerTests {
@@ -19,15 +19,22 @@ package org.springframework.samples.petclinic.service;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.FilterType;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.samples.petclinic.owner.*;
+import org.springframework.samples.petclinic.utility.CacheExecutors;
 import org.springframework.samples.petclinic.utility.PetTimedCache;
+import org.springframework.samples.petclinic.utility.PetTimedCacheProperties;
+import org.springframework.samples.petclinic.utility.TimedCacheManager;
+import org.springframework.samples.petclinic.utility.TimedCacheManagerProperties;
 import org.springframework.samples.petclinic.vet.Vet;
 import org.springframework.samples.petclinic.vet.VetRepository;
 import org.springframework.samples.petclinic.visit.Visit;
@@ -68,7 +75,11 @@ import org.springframework.transaction.annotation.Transactional;
 	@ComponentScan.Filter(Service.class),
 	@ComponentScan.Filter(value = PetTypeFormatter.class, type = FilterType.ASSIGNABLE_TYPE),
 	@ComponentScan.Filter(value = LoggerConfig.class, type = FilterType.ASSIGNABLE_TYPE),
-	@ComponentScan.Filter(value = PetTimedCache.class, type = FilterType.ASSIGNABLE_TYPE)
+	@ComponentScan.Filter(value = PetTimedCache.class, type = FilterType.ASSIGNABLE_TYPE),
+	@ComponentScan.Filter(value = PetTimedCacheProperties.class, type = FilterType.ASSIGNABLE_TYPE),
+	@ComponentScan.Filter(value = TimedCacheManager.class, type = FilterType.ASSIGNABLE_TYPE),
+	@ComponentScan.Filter(value = TimedCacheManagerProperties.class, type = FilterType.ASSIGNABLE_TYPE),
+	@ComponentScan.Filter(value = CacheExecutors.class, type = FilterType.ASSIGNABLE_TYPE)
 })
 class ClinicServiceTests {
 
@@ -86,10 +97,10 @@ class ClinicServiceTests {
 
 	@Test
 	void shouldFindOwnersByLastName() {
-		Collection<Owner> owners = this.owners.findByLastName("Davis");
+		List<Owner> owners = this.owners.findPageByLastName("Davis", PageRequest.of(0, 20));
 		assertThat(owners).hasSize(2);
 
-		owners = this.owners.findByLastName("Daviss");
+		owners = this.owners.findPageByLastName("Daviss", PageRequest.of(0, 20));
 		assertThat(owners).isEmpty();
 	}
 
@@ -105,7 +116,7 @@ class ClinicServiceTests {
 	@Test
 	@Transactional
 	void shouldInsertOwner() {
-		Collection<Owner> owners = this.owners.findByLastName("Schultz");
+		List<Owner> owners = this.owners.findPageByLastName("Schultz", PageRequest.of(0, 20));
 		int found = owners.size();
 
 		Owner owner = new Owner();
@@ -117,7 +128,7 @@ class ClinicServiceTests {
 		this.owners.save(owner);
 		assertThat(owner.getId().longValue()).isNotEqualTo(0);
 
-		owners = this.owners.findByLastName("Schultz");
+		owners = this.owners.findPageByLastName("Schultz", PageRequest.of(0, 20));
 		assertThat(owners.size()).isEqualTo(found + 1);
 	}
 
@@ -227,4 +238,45 @@ class ClinicServiceTests {
 		assertThat(visitArr[0].getPetId()).isEqualTo(7);
 	}
 
+	@Test
+	void shouldPageThroughOwnersByLastNameAndId() {
+		List<Owner> first = this.owners.findPageByLastName("", PageRequest.of(0, 4));
+		assertThat(first).extracting(Owner::getLastName).containsExactly("Black", "Coleman", "Davis", "Davis");
+		Owner last = first.get(3);
+		List<Owner> second = this.owners.findPageByLastNameAfter("", last.getLastName(), last.getId(),
+				PageRequest.of(0, 4));
+		assertThat(second).extracting(Owner::getLastName).containsExactly("Escobito", "Estaban", "Franklin",
+				"McTavish");
+		List<Owner> back = this.owners.findPageByLastNameBefore("", second.get(0).getLastName(), second.get(0).getId(),
+				PageRequest.of(0, 4));
+		assertThat(back).extracting(Owner::getId).containsExactly(last.getId(), first.get(2).getId(),
+				first.get(1).getId(), first.get(0).getId());
+	}
+
+	@Test
+	void shouldFindOwnersById() {
+		assertThat(this.owners.findByIdIn(Arrays.asList(1, 2, 99))).extracting(Owner::getLastName)
+				.containsExactlyInAnyOrder("Franklin", "Davis");
+	}
+
+	@Test
+	void shouldPageOwnersByLastNameIgnoringCase() {
+		assertThat(this.owners.findPageByLastName("dAVIS", PageRequest.of(0, 4))).extracting(Owner::getLastName)
+				.containsExactly("Davis", "Davis");
+		assertThat(this.owners.findPageByLastName("franklin", PageRequest.of(0, 4))).extracting(Owner::getLastName)
+				.containsExactly("Franklin");
+	}
+
+	@Test
+	void shouldFindOwnerDetailsWithPetsTypesAndVisits() {
+		OwnerDetails owner = this.owners.findDetailsById(6);
+		assertThat(owner.getLastName()).isEqualTo("Coleman");
+		assertThat(owner.getPets()).extracting(OwnerDetails.PetDetails::getName).containsExactly("Max", "Samantha");
+		OwnerDetails.PetDetails samantha = owner.getPets().get(1);
+		assertThat(samantha.getType()).isEqualTo("cat");
+		assertThat(samantha.getVisits()).extracting(OwnerDetails.VisitDetails::getDescription)
+				.containsExactly("spayed", "rabies shot");
+		assertThat(this.owners.findDetailsById(-1)).isNull();
+	}
+
 }
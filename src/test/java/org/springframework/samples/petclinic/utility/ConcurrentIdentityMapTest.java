@@ -0,0 +1,61 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.model.BaseEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrentIdentityMapTest {
+
+	private static BaseEntity entity(int id) {
+		BaseEntity entity = new BaseEntity();
+		entity.setId(id);
+		return entity;
+	}
+
+	@Test
+	void addReplacesAndRemoveDropsById() {
+		ConcurrentIdentityMap<BaseEntity> map = new ConcurrentIdentityMap<>();
+		BaseEntity replacement = entity(1);
+		map.add(entity(1));
+		map.add(replacement);
+		assertThat(map.size()).isEqualTo(1);
+		assertThat(map.get(1)).isSameAs(replacement);
+		assertThat(map.addIfAbsent(entity(1))).isSameAs(replacement);
+		assertThat(map.remove(entity(1))).isTrue();
+		assertThat(map.containsId(1)).isFalse();
+	}
+
+	@Test
+	void computeIfAbsentLoadsOncePerIdAcrossThreads() throws Exception {
+		ConcurrentIdentityMap<BaseEntity> map = new ConcurrentIdentityMap<>();
+		AtomicInteger loads = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<BaseEntity>> futures = new ArrayList<>();
+			for (int i = 0; i < 64; i++) {
+				futures.add(executor.submit(() -> map.computeIfAbsent(42, id -> {
+					loads.incrementAndGet();
+					return entity(id);
+				})));
+			}
+			for (Future<BaseEntity> future : futures) {
+				assertThat(future.get()).isSameAs(map.get(42));
+			}
+			assertThat(loads.get()).isEqualTo(1);
+		}
+		finally {
+			executor.shutdown();
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+
+}
@@ -0,0 +1,37 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FrequencySketchTest {
+
+	@Test
+	void tableGrowsWithTheEntriesUpToTheCeiling() {
+		FrequencySketch sketch = new FrequencySketch(Long.MAX_VALUE);
+		assertThat(sketch.tableSize()).isEqualTo(16);
+		sketch.ensureCapacity(1_000);
+		assertThat(sketch.tableSize()).isEqualTo(1024);
+		sketch.ensureCapacity(Long.MAX_VALUE);
+		assertThat(sketch.tableSize()).isEqualTo(FrequencySketch.MAXIMUM_TABLE_SIZE);
+	}
+
+	@Test
+	void tableNeverOutgrowsTheMaximumSize() {
+		FrequencySketch sketch = new FrequencySketch(100);
+		sketch.ensureCapacity(1_000_000);
+		assertThat(sketch.tableSize()).isEqualTo(128);
+	}
+
+	@Test
+	void countsFrequencies() {
+		FrequencySketch sketch = new FrequencySketch(1_000);
+		for (int i = 0; i < 5; i++) {
+			sketch.increment(42);
+		}
+		sketch.increment(7);
+		assertThat(sketch.frequency(42)).isEqualTo(5);
+		assertThat(sketch.frequency(7)).isGreaterThanOrEqualTo(1).isLessThan(5);
+	}
+
+}
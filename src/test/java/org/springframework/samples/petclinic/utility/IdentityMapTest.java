@@ -0,0 +1,127 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.model.BaseEntity;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Spliterator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.fail;
+
+class IdentityMapTest {
+
+	private static BaseEntity entity(int id) {
+		BaseEntity entity = new BaseEntity();
+		entity.setId(id);
+		return entity;
+	}
+
+	@Test
+	void addReplacesEntityWithSameId() {
+		IdentityMap<BaseEntity> map = new IdentityMap<>();
+		BaseEntity first = entity(7);
+		BaseEntity second = entity(7);
+		map.add(first);
+		map.add(second);
+		assertThat(map.size()).isEqualTo(1);
+		assertThat(map.get(7)).isSameAs(second);
+		assertThat(map.contains(entity(7))).isTrue();
+	}
+
+	@Test
+	void removeKeepsRemainingEntitiesReachable() {
+		IdentityMap<BaseEntity> map = new IdentityMap<>(4);
+		for (int id = 0; id < 10_000; id++) {
+			map.add(entity(id));
+		}
+		for (int id = 0; id < 10_000; id += 2) {
+			assertThat(map.remove(entity(id))).isTrue();
+		}
+		assertThat(map.size()).isEqualTo(5_000);
+		for (int id = 0; id < 10_000; id++) {
+			assertThat(map.containsId(id)).isEqualTo(id % 2 == 1);
+		}
+		assertThat(map.remove(entity(0))).isFalse();
+	}
+
+	@Test
+	void clearEmptiesMap() {
+		IdentityMap<BaseEntity> map = new IdentityMap<>();
+		map.add(entity(1));
+		map.add(entity(2));
+		map.clear();
+		assertThat(map.isEmpty()).isTrue();
+		assertThat(map.containsId(1)).isFalse();
+	}
+
+	@Test
+	void rejectsEntityWithoutId() {
+		IdentityMap<BaseEntity> map = new IdentityMap<>();
+		assertThatThrownBy(() -> map.add(new BaseEntity())).isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	void iteratorRemoveVisitsEveryEntityOnce() {
+		IdentityMap<BaseEntity> map = new IdentityMap<>();
+		for (int id = 0; id < 100; id++) {
+			map.add(entity(id));
+		}
+		int visited = 0;
+		for (Iterator<BaseEntity> it = map.iterator(); it.hasNext();) {
+			BaseEntity entity = it.next();
+			visited++;
+			if (entity.getId() % 3 == 0) {
+				it.remove();
+			}
+		}
+		assertThat(visited).isEqualTo(100);
+		assertThat(map.size()).isEqualTo(66);
+		assertThat(map).allMatch(entity -> entity.getId() % 3 != 0);
+	}
+
+	@Test
+	void iteratorFailsFastOnConcurrentModification() {
+		IdentityMap<BaseEntity> map = new IdentityMap<>();
+		map.add(entity(1));
+		map.add(entity(2));
+		try {
+			for (BaseEntity entity : map) {
+				map.add(entity(entity.getId() + 10));
+			}
+			fail("expected ConcurrentModificationException");
+		}
+		catch (ConcurrentModificationException expected) {
+		}
+	}
+
+	@Test
+	void toArrayAndRetainAll() {
+		IdentityMap<BaseEntity> map = new IdentityMap<>();
+		BaseEntity one = entity(1);
+		BaseEntity two = entity(2);
+		BaseEntity three = entity(3);
+		map.addAll(Arrays.asList(one, two, three));
+		assertThat(map.toArray()).containsExactly(one, two, three);
+		assertThat(map.toArray(new BaseEntity[0])).containsExactly(one, two, three);
+		assertThat(map.retainAll(Arrays.asList(two))).isTrue();
+		assertThat(map.toArray()).containsExactly(two);
+	}
+
+	@Test
+	void parallelStreamSeesAllEntities() {
+		IdentityMap<BaseEntity> map = new IdentityMap<>();
+		for (int id = 1; id <= 10_000; id++) {
+			map.add(entity(id));
+		}
+		Spliterator<BaseEntity> spliterator = map.spliterator();
+		assertThat(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.DISTINCT
+				| Spliterator.NONNULL)).isTrue();
+		assertThat(spliterator.trySplit().estimateSize()).isEqualTo(5_000);
+		assertThat(map.parallelStream().mapToLong(BaseEntity::getId).sum()).isEqualTo(50_005_000L);
+	}
+
+}
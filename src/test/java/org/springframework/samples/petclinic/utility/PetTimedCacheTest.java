@@ -1,7 +1,346 @@
 package org.springframework.samples.petclinic.utility;
 
-import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.owner.Pet;
+import org.springframework.samples.petclinic.owner.PetRepository;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
-// todo
 class PetTimedCacheTest {
+
+	private static final int PET_ID = 1;
+
+	private PetRepository repository;
+
+	private Pet pet;
+
+	@BeforeEach
+	void setup() {
+		repository = mock(PetRepository.class);
+		pet = new Pet();
+		pet.setId(PET_ID);
+		pet.setName("Leo");
+		given(repository.findById(PET_ID)).willReturn(pet);
+	}
+
+	@Test
+	void secondGetIsServedFromCache() {
+		PetTimedCache cache = new PetTimedCache(60_000, repository);
+		assertThat(cache.get(PET_ID)).isSameAs(pet);
+		assertThat(cache.get(PET_ID)).isSameAs(pet);
+		verify(repository, times(1)).findById(PET_ID);
+	}
+
+	@Test
+	void expiredEntryIsReloaded() throws InterruptedException {
+		PetTimedCache cache = new PetTimedCache(1, repository);
+		cache.get(PET_ID);
+		Thread.sleep(5);
+		cache.cleanUp();
+		cache.get(PET_ID);
+		verify(repository, times(2)).findById(PET_ID);
+	}
+
+	@Test
+	void expiredEntriesAreRemovedInTheBackgroundUntilDestroyed() throws Exception {
+		CacheExecutors executors = new CacheExecutors();
+		try {
+			PetTimedCache cache = new PetTimedCache(properties(Duration.ofMillis(20)), repository, executors);
+			cache.get(PET_ID);
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (cache.size() > 0 && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			assertThat(cache.size()).isZero();
+			cache.destroy();
+			cache.get(PET_ID);
+			Thread.sleep(100);
+			assertThat(cache.size()).isEqualTo(1);
+		}
+		finally {
+			executors.destroy();
+		}
+	}
+
+	@Test
+	void expiryFollowsTheTicker() {
+		AtomicLong nanos = new AtomicLong();
+		PetTimedCacheProperties properties = new PetTimedCacheProperties();
+		properties.setExpiry(Duration.ofSeconds(10));
+		PetTimedCache cache = new PetTimedCache(properties, repository, nanos::get);
+		cache.get(PET_ID);
+		nanos.addAndGet(TimeUnit.SECONDS.toNanos(9));
+		cache.get(PET_ID);
+		nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+		cache.get(PET_ID);
+		verify(repository, times(2)).findById(PET_ID);
+		CacheStats stats = cache.stats();
+		assertThat(stats.getHitCount()).isEqualTo(1);
+		assertThat(stats.getMissCount()).isEqualTo(2);
+		assertThat(stats.getLoadSuccessCount()).isEqualTo(2);
+	}
+
+	@Test
+	void missingPetIsRememberedUntilItExpiresOrIsSaved() {
+		int missingId = 2;
+		AtomicLong nanos = new AtomicLong();
+		PetTimedCacheProperties properties = new PetTimedCacheProperties();
+		properties.setMissingExpiry(Duration.ofSeconds(1));
+		PetTimedCache cache = new PetTimedCache(properties, repository, nanos::get);
+		assertThat(cache.get(missingId)).isNull();
+		assertThat(cache.get(missingId)).isNull();
+		verify(repository, times(1)).findById(missingId);
+		nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+		assertThat(cache.get(missingId)).isNull();
+		verify(repository, times(2)).findById(missingId);
+
+		Pet saved = new Pet();
+		saved.setId(missingId);
+		given(repository.findById(missingId)).willReturn(saved);
+		cache.save(saved);
+		assertThat(cache.get(missingId)).isSameAs(saved);
+	}
+
+	@Test
+	void hitDoesNotAllocate() {
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		assumeTrue(threads.isThreadAllocatedMemoryEnabled());
+		PetTimedCache cache = new PetTimedCache(60_000, repository);
+		Integer id = PET_ID;
+		for (int i = 0; i < 100_000; i++) {
+			cache.get(id);
+		}
+		long threadId = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < 100_000; i++) {
+			cache.get(id);
+		}
+		long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+		// leaves room for the measurement itself, not for a single object per hit
+		assertThat(allocated).isLessThan(10_000);
+	}
+
+	@Test
+	void sizeIsBoundedAndFrequentPetsSurviveAScan() {
+		given(repository.findById(anyInt())).willAnswer(invocation -> {
+			Pet loaded = new Pet();
+			loaded.setId(invocation.getArgument(0));
+			return loaded;
+		});
+		PetTimedCache cache = new PetTimedCache(60_000, 100, repository);
+		for (int round = 0; round < 5; round++) {
+			for (int id = 0; id < 50; id++) {
+				cache.get(id);
+			}
+		}
+		for (int id = 0; id < 10_000; id++) {
+			// one-off ids interleaved with regular traffic to the popular pets
+			cache.get(1_000 + id);
+			cache.get(id % 50);
+		}
+		assertThat(cache.size()).isLessThanOrEqualTo(100);
+		long missesBefore = cache.stats().getMissCount();
+		for (int id = 0; id < 50; id++) {
+			cache.get(id);
+		}
+		assertThat(cache.stats().getMissCount()).isEqualTo(missesBefore);
+		assertThat(cache.stats().getEvictionCount()).isGreaterThan(0);
+	}
+
+	@Test
+	void concurrentMissesShareOneLoad() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		given(repository.findById(PET_ID)).willAnswer(invocation -> {
+			release.await();
+			return pet;
+		});
+		PetTimedCache cache = new PetTimedCache(60_000, repository);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Pet>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(() -> cache.get(PET_ID)));
+			}
+			Thread.sleep(100);
+			release.countDown();
+			for (Future<Pet> result : results) {
+				assertThat(result.get(5, TimeUnit.SECONDS)).isSameAs(pet);
+			}
+			verify(repository, times(1)).findById(PET_ID);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void loadFailureIsPropagatedToWaiters() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		given(repository.findById(PET_ID)).willAnswer(invocation -> {
+			release.await();
+			throw new IllegalStateException("database down");
+		});
+		PetTimedCache cache = new PetTimedCache(60_000, repository);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Pet>> results = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				results.add(executor.submit(() -> cache.get(PET_ID)));
+			}
+			Thread.sleep(100);
+			release.countDown();
+			for (Future<Pet> result : results) {
+				assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+						.hasRootCauseMessage("database down");
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	void hitPastRefreshWindowReloadsInTheBackground() throws InterruptedException {
+		PetTimedCacheProperties properties = new PetTimedCacheProperties();
+		properties.setExpiry(Duration.ofSeconds(10));
+		properties.setRefreshAheadFactor(0.001);
+		PetTimedCache cache = new PetTimedCache(properties, repository);
+		cache.get(PET_ID);
+		Thread.sleep(50);
+		assertThat(cache.get(PET_ID)).isSameAs(pet);
+		verify(repository, timeout(5_000).times(2)).findById(PET_ID);
+		assertThat(cache.stats().getMissCount()).isEqualTo(1);
+	}
+
+	@Test
+	void getAllLoadsMissesInChunkedBulkQueries() {
+		given(repository.findByIdIn(anyCollection())).willAnswer(invocation -> {
+			Collection<Integer> ids = invocation.getArgument(0);
+			assertThat(ids).hasSizeLessThanOrEqualTo(PetTimedCache.MAX_IDS_PER_QUERY);
+			List<Pet> found = new ArrayList<>();
+			for (Integer id : ids) {
+				if (id % 2 == 0) {
+					Pet loaded = new Pet();
+					loaded.setId(id);
+					found.add(loaded);
+				}
+			}
+			return found;
+		});
+		PetTimedCache cache = new PetTimedCache(60_000, repository);
+		cache.get(PET_ID);
+		List<Integer> ids = new ArrayList<>();
+		ids.add(PET_ID);
+		for (int id = 2; id <= 1_200; id++) {
+			ids.add(id);
+		}
+		Map<Integer, Pet> pets = cache.getAll(ids);
+		assertThat(pets).hasSize(601).containsEntry(PET_ID, pet);
+		assertThat(pets.keySet()).startsWith(PET_ID, 2, 4);
+		verify(repository, times(3)).findByIdIn(anyCollection());
+		assertThat(cache.getAll(Arrays.asList(4, 6))).containsOnlyKeys(4, 6);
+		verify(repository, times(3)).findByIdIn(anyCollection());
+	}
+
+	@Test
+	void saveInvalidatesCachedPetByDefault() {
+		PetTimedCache cache = new PetTimedCache(60_000, repository);
+		cache.get(PET_ID);
+		cache.save(pet);
+		cache.get(PET_ID);
+		verify(repository).save(pet);
+		verify(repository, times(2)).findById(PET_ID);
+	}
+
+	@Test
+	void saveWritesThroughWhenConfigured() {
+		PetTimedCacheProperties properties = new PetTimedCacheProperties();
+		properties.setWriteMode(PetTimedCache.WriteMode.WRITE_THROUGH);
+		PetTimedCache cache = new PetTimedCache(properties, repository);
+		cache.get(PET_ID);
+		Pet updated = new Pet();
+		updated.setId(PET_ID);
+		updated.setName("Leonard");
+		cache.save(updated);
+		assertThat(cache.get(PET_ID)).isSameAs(updated);
+		verify(repository, times(1)).findById(PET_ID);
+	}
+
+	@Test
+	void writeBehindCoalescesSavesOfTheSamePet() throws Exception {
+		PetTimedCacheProperties properties = new PetTimedCacheProperties();
+		properties.setWriteMode(PetTimedCache.WriteMode.WRITE_BEHIND);
+		properties.setWriteBehindDelay(Duration.ofHours(1));
+		PetTimedCache cache = new PetTimedCache(properties, repository);
+		Pet latest = null;
+		for (int version = 0; version < 3; version++) {
+			latest = new Pet();
+			latest.setId(PET_ID);
+			latest.setName("Leo " + version);
+			cache.save(latest);
+		}
+		assertThat(cache.get(PET_ID)).isSameAs(latest);
+		verify(repository, never()).saveAll(any());
+		cache.destroy();
+		verify(repository).saveAll(Collections.singletonList(latest));
+		verify(repository, never()).save(any());
+	}
+
+	@Test
+	void droppedWriteBehindIsNotServedFromTheCache() {
+		PetTimedCacheProperties properties = new PetTimedCacheProperties();
+		properties.setWriteMode(PetTimedCache.WriteMode.WRITE_BEHIND);
+		properties.setWriteBehindDelay(Duration.ofHours(1));
+		PetTimedCache cache = new PetTimedCache(properties, repository);
+		cache.get(PET_ID);
+		Pet unsaved = new Pet();
+		unsaved.setId(PET_ID);
+		unsaved.setName("Leonard");
+		willThrow(new IllegalStateException("database down")).given(repository).saveAll(any());
+		willThrow(new IllegalStateException("database down")).given(repository).save(unsaved);
+		cache.save(unsaved);
+		assertThat(cache.get(PET_ID)).isSameAs(unsaved);
+		cache.flush();
+		assertThat(cache.get(PET_ID)).isSameAs(pet);
+		verify(repository, times(2)).findById(PET_ID);
+		cache.destroy();
+	}
+
+	private static PetTimedCacheProperties properties(Duration expiry) {
+		PetTimedCacheProperties properties = new PetTimedCacheProperties();
+		properties.setExpiry(expiry);
+		return properties;
+	}
+
 }
@@ -1,30 +1,42 @@
 package org.springframework.samples.petclinic.utility;
 
-import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.springframework.samples.petclinic.owner.OwnerRepository;
 import org.springframework.samples.petclinic.owner.PetRepository;
+import org.springframework.samples.petclinic.owner.PetService;
+import org.springframework.samples.petclinic.owner.VisitRepository;
 
+import java.time.Duration;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
 
-// todo pass these tests
-@Disabled
 class SimpleDITest {
 
+	/** a container per test, so registrations never leak into other tests */
+	private final SimpleDI simpleDi = new SimpleDIContainer();
+
+	@Test
+	public void testGlobalContainerIsShared() throws Exception {
+		assertSame(SimpleDI.getDIContainer(), SimpleDI.getDIContainer());
+	}
+
 	@Test
 	public void testProvideByInstance() throws Exception {
-		SimpleDI diContainer = SimpleDI.getDIContainer();
 		PetRepository petRepoMock = mock(PetRepository.class);
-		diContainer.provideByInstance(PetRepository.class, petRepoMock);
-		PetRepository diProvidedRepo = (PetRepository) diContainer.getInstanceOf(PetRepository.class);
+		simpleDi.provideByInstance(PetRepository.class, petRepoMock);
+		PetRepository diProvidedRepo = (PetRepository) simpleDi.getInstanceOf(PetRepository.class);
 		assertEquals(petRepoMock, diProvidedRepo);
 	}
 
 	@Test
 	public void testProvideByFunction() throws Exception {
-		SimpleDI simpleDi = SimpleDI.getDIContainer();
 		simpleDi.provideByAConstructorFunction(PetRepository.class, new Callable<Object>() {
 			@Override
 			public Object call() throws Exception {
@@ -33,4 +45,228 @@ class SimpleDITest {
 		});
 		assertNotNull(simpleDi.getInstanceOf(PetRepository.class));
 	}
+
+	@Test
+	public void testConstructorFunctionRunsOnce() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+		simpleDi.provideByAConstructorFunction(OwnerRepository.class, () -> {
+			calls.incrementAndGet();
+			return mock(OwnerRepository.class);
+		});
+		Object first = simpleDi.getInstanceOf(OwnerRepository.class);
+		assertSame(first, simpleDi.getInstanceOf(OwnerRepository.class));
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void testLaterRegistrationReplacesEarlierOne() throws Exception {
+		VisitRepository first = mock(VisitRepository.class);
+		VisitRepository second = mock(VisitRepository.class);
+		simpleDi.provideByInstance(VisitRepository.class, first);
+		simpleDi.provideByInstance(VisitRepository.class, second);
+		assertSame(second, simpleDi.getInstanceOf(VisitRepository.class));
+	}
+
+	@Test
+	public void testInstanceOfAnotherTypeIsRejected() throws Exception {
+		assertThrows(IllegalArgumentException.class,
+				() -> simpleDi.provideByInstance(PetRepository.class, mock(OwnerRepository.class)));
+	}
+
+	@Test
+	public void testUnknownTypeIsRejected() throws Exception {
+		assertThrows(IllegalArgumentException.class, () -> simpleDi.getInstanceOf(Unregistered.class));
+	}
+
+	@Test
+	public void testConcreteClassIsAutowired() throws Exception {
+		Branch branch = (Branch) simpleDi.getInstanceOf(Branch.class);
+		assertSame(branch, simpleDi.getInstanceOf(Branch.class));
+		assertSame(simpleDi.getInstanceOf(Leaf.class), branch.leaf);
+	}
+
+	@Test
+	public void testPackagePrivateClassOfAnotherPackageIsAutowired() throws Exception {
+		Class<?> welcome = Class.forName("org.springframework.samples.petclinic.system.WelcomeController");
+		Object controller = simpleDi.getInstanceOf(welcome);
+		assertSame(welcome, controller.getClass());
+		assertSame(controller, simpleDi.getInstanceOf(welcome));
+	}
+
+	@Test
+	public void testServiceIsAutowiredFromRegisteredDependencies() throws Exception {
+		simpleDi.provideByInstance(PetRepository.class, mock(PetRepository.class));
+		simpleDi.provideByInstance(OwnerRepository.class, mock(OwnerRepository.class));
+		simpleDi.provideByInstance(Logger.class, mock(Logger.class));
+		// a manager without JMX, and executors that are shut down with it
+		CacheExecutors executors = new CacheExecutors();
+		TimedCacheManager manager = new TimedCacheManager(executors);
+		simpleDi.provideByInstance(CacheExecutors.class, executors);
+		simpleDi.provideByInstance(TimedCacheManager.class, manager);
+		try {
+			assertNotNull(simpleDi.getInstanceOf(PetService.class));
+			assertNotNull(simpleDi.getInstanceOf(PetTimedCache.class));
+		} finally {
+			// closes the pets cache too
+			manager.destroy();
+			executors.destroy();
+		}
+	}
+
+	@Test
+	public void testDependencyCycleIsReported() throws Exception {
+		IllegalStateException e = assertThrows(IllegalStateException.class,
+				() -> simpleDi.getInstanceOf(CycleStart.class));
+		assertTrue(e.getMessage().contains("CycleStart -> CycleEnd -> CycleStart"), e.getMessage());
+	}
+
+	@Test
+	public void testMissingDependencyNamesTheDependent() throws Exception {
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+				() -> simpleDi.getInstanceOf(NeedsUnregistered.class));
+		assertTrue(e.getMessage().contains("required by NeedsUnregistered"), e.getMessage());
+	}
+
+	@Test
+	public void testConstructorsAreIndexedAtBuildTime() throws Exception {
+		IndexedConstructor petService = SimpleDIContainer.INDEX.get(PetService.class);
+		assertNotNull(petService, "the index is generated by the compiler, see pom.xml");
+		assertArrayEquals(new Class<?>[] { PetTimedCache.class, OwnerRepository.class, Logger.class },
+				petService.parameterTypes);
+	}
+
+	@Test
+	public void testIndependentSingletonsAreInitializedConcurrently() throws Exception {
+		// each provider waits for the other, so they only finish if they run at the same time
+		CountDownLatch bothStarted = new CountDownLatch(2);
+		Callable<Object> slow = () -> {
+			bothStarted.countDown();
+			assertTrue(bothStarted.await(10, TimeUnit.SECONDS));
+			return new Leaf();
+		};
+		simpleDi.provideByAConstructorFunction(Leaf.class, slow);
+		simpleDi.provideByAConstructorFunction(Object.class, slow);
+		simpleDi.initializeAll(Duration.ofSeconds(10));
+		Branch branch = (Branch) simpleDi.getInstanceOf(Branch.class);
+		assertSame(simpleDi.getInstanceOf(Leaf.class), branch.leaf);
+	}
+
+	@Test
+	public void testStuckProviderTimesOut() throws Exception {
+		simpleDi.provideByAConstructorFunction(Leaf.class, () -> {
+			Thread.sleep(60_000);
+			return new Leaf();
+		});
+		TimeoutException e = assertThrows(TimeoutException.class,
+				() -> simpleDi.initializeAll(Duration.ofMillis(100)));
+		assertTrue(e.getMessage().contains("Leaf"), e.getMessage());
+	}
+
+	@Test
+	public void testStuckProviderDoesNotBlockLaterLookups() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger calls = new AtomicInteger();
+		simpleDi.provideByAConstructorFunction(Leaf.class, () -> {
+			if (calls.incrementAndGet() == 1) {
+				// stuck in a way that ignores the interrupt
+				while (release.getCount() > 0) {
+					try {
+						release.await();
+					} catch (InterruptedException ignored) {
+					}
+				}
+			}
+			return new Leaf();
+		});
+		assertThrows(TimeoutException.class, () -> simpleDi.initializeAll(Duration.ofMillis(100)));
+		Object leaf = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> simpleDi.getInstanceOf(Leaf.class));
+		assertEquals(2, calls.get());
+		release.countDown();
+		assertSame(leaf, simpleDi.getInstanceOf(Leaf.class));
+	}
+
+	@Test
+	public void testPrototypesAreCreatedForEveryLookup() throws Exception {
+		simpleDi.provideByAConstructorFunction(Leaf.class, SimpleDI.Lifetime.PROTOTYPE, Leaf::new);
+		assertNotSame(simpleDi.getInstanceOf(Leaf.class), simpleDi.getInstanceOf(Leaf.class));
+	}
+
+	@Test
+	public void testThreadConfinedInstancesAreCreatedPerThread() throws Exception {
+		simpleDi.provideByAConstructorFunction(Leaf.class, SimpleDI.Lifetime.THREAD, Leaf::new);
+		Object mine = simpleDi.getInstanceOf(Leaf.class);
+		assertSame(mine, simpleDi.getInstanceOf(Leaf.class));
+		Object[] other = new Object[1];
+		Thread thread = new Thread(() -> {
+			try {
+				other[0] = simpleDi.getInstanceOf(Leaf.class);
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		thread.start();
+		thread.join();
+		assertNotNull(other[0]);
+		assertNotSame(mine, other[0]);
+	}
+
+	@Test
+	public void testScopedInstancesLiveAsLongAsTheirScope() throws Exception {
+		simpleDi.provideByAConstructorFunction(Closing.class, SimpleDI.Lifetime.SCOPED, Closing::new);
+		assertThrows(IllegalStateException.class, () -> simpleDi.getInstanceOf(Closing.class));
+		Closing outer;
+		try (SimpleDI.Scope scope = simpleDi.openScope()) {
+			outer = (Closing) simpleDi.getInstanceOf(Closing.class);
+			assertSame(outer, simpleDi.getInstanceOf(Closing.class));
+			try (SimpleDI.Scope nested = simpleDi.openScope()) {
+				assertNotSame(outer, simpleDi.getInstanceOf(Closing.class));
+			}
+			assertSame(outer, simpleDi.getInstanceOf(Closing.class));
+			assertFalse(outer.closed);
+		}
+		assertTrue(outer.closed);
+	}
+
+	interface Unregistered {
+	}
+
+	static class Leaf {
+	}
+
+	static class Branch {
+
+		final Leaf leaf;
+
+		Branch(Leaf leaf) {
+			this.leaf = leaf;
+		}
+	}
+
+	static class CycleStart {
+
+		CycleStart(CycleEnd end) {
+		}
+	}
+
+	static class CycleEnd {
+
+		CycleEnd(CycleStart start) {
+		}
+	}
+
+	static class Closing implements AutoCloseable {
+
+		boolean closed;
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	static class NeedsUnregistered {
+
+		NeedsUnregistered(Unregistered unregistered) {
+		}
+	}
 }
@@ -0,0 +1,90 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.model.NamedEntity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SortedIdentityMapTest {
+
+	private SortedIdentityMap<NamedEntity, String> map;
+
+	private static NamedEntity named(int id, String name) {
+		NamedEntity entity = new NamedEntity();
+		entity.setId(id);
+		entity.setName(name);
+		return entity;
+	}
+
+	@BeforeEach
+	void setup() {
+		map = SortedIdentityMap.orderedBy(NamedEntity::getName);
+		map.add(named(1, "Max"));
+		map.add(named(2, "Basil"));
+		map.add(named(3, "Leo"));
+		map.add(named(4, "Rosy"));
+		map.add(named(5, "Jewel"));
+	}
+
+	@Test
+	void keepsOrderOnInsertAndRemove() {
+		assertThat(map.sorted()).extracting(NamedEntity::getName).containsExactly("Basil", "Jewel", "Leo", "Max", "Rosy");
+		map.remove(named(3, "Leo"));
+		map.add(named(6, "Iggy"));
+		assertThat(map.sorted()).extracting(NamedEntity::getName).containsExactly("Basil", "Iggy", "Jewel", "Max", "Rosy");
+	}
+
+	@Test
+	void replacingAnEntityMovesItInTheIndex() {
+		map.add(named(2, "Zoe"));
+		assertThat(map.size()).isEqualTo(5);
+		assertThat(map.select(4).getName()).isEqualTo("Zoe");
+		assertThat(map.select(0).getName()).isEqualTo("Jewel");
+	}
+
+	@Test
+	void rangeQueries() {
+		assertThat(map.head("Leo")).extracting(NamedEntity::getName).containsExactly("Basil", "Jewel");
+		assertThat(map.tail("Leo")).extracting(NamedEntity::getName).containsExactly("Leo", "Max", "Rosy");
+		assertThat(map.range("C", "N")).extracting(NamedEntity::getName).containsExactly("Jewel", "Leo", "Max");
+		assertThat(map.page(3, 10)).extracting(NamedEntity::getName).containsExactly("Max", "Rosy");
+	}
+
+	@Test
+	void rankAndSelect() {
+		NamedEntity leo = map.select(2);
+		assertThat(leo.getName()).isEqualTo("Leo");
+		assertThat(map.rank(leo)).isEqualTo(2);
+		assertThat(map.rank(named(99, "Leo"))).isEqualTo(-1);
+	}
+
+	@Test
+	void rankUsesTheKeyOfTheStoredEntity() {
+		NamedEntity leo = map.select(2);
+		assertThat(map.rank(named(leo.getId(), "Aaron"))).isEqualTo(2);
+	}
+
+	@Test
+	void failingKeyLeavesMapAndIndexUnchanged() {
+		SortedIdentityMap<NamedEntity, String> strict = SortedIdentityMap.orderedBy(entity -> {
+			if ("".equals(entity.getName())) {
+				throw new IllegalArgumentException("no name");
+			}
+			return entity.getName();
+		});
+		strict.addAll(map.sorted());
+		assertThatThrownBy(() -> strict.add(named(6, ""))).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> strict.add(named(2, ""))).isInstanceOf(IllegalArgumentException.class);
+		// the natural order comparator throws on a null key, after the replaced entity left the index
+		assertThatThrownBy(() -> strict.add(named(3, null))).isInstanceOf(NullPointerException.class);
+		assertThat(strict.size()).isEqualTo(5);
+		assertThat(strict.containsId(6)).isFalse();
+		assertThat(strict.get(2).getName()).isEqualTo("Basil");
+		assertThat(strict.get(3).getName()).isEqualTo("Leo");
+		assertThat(strict.sorted()).extracting(NamedEntity::getName).containsExactly("Basil", "Jewel", "Leo", "Max", "Rosy");
+		assertThat(strict.rank(strict.get(3))).isEqualTo(2);
+	}
+
+}
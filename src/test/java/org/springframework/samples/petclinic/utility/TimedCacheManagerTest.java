@@ -0,0 +1,110 @@
+package org.springframework.samples.petclinic.utility;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TimedCacheManagerTest {
+
+	private final TimedCacheManager manager = new TimedCacheManager(CacheExecutors.common());
+
+	@AfterEach
+	void close() {
+		manager.destroy();
+	}
+
+	@Test
+	void cacheIsCreatedOnFirstUseAndLoadsOnce() {
+		Cache cache = manager.getCache("vets");
+		AtomicInteger loads = new AtomicInteger();
+		assertThat(cache.get("all", () -> "vet-" + loads.incrementAndGet())).isEqualTo("vet-1");
+		assertThat(cache.get("all", () -> "vet-" + loads.incrementAndGet())).isEqualTo("vet-1");
+		assertThat(manager.getCache("vets")).isSameAs(cache);
+		assertThat(manager.getCacheNames()).containsExactly("vets");
+
+		CacheStats stats = ((TimedCacheAdapter) cache).getNativeCache().stats();
+		assertThat(stats.getHitCount()).isEqualTo(1);
+		assertThat(stats.getMissCount()).isEqualTo(1);
+		assertThat(stats.getLoadSuccessCount()).isEqualTo(1);
+	}
+
+	@Test
+	void nullResultsAreCachedAndEvictable() {
+		Cache cache = manager.getCache("owners");
+		cache.put(1, null);
+		assertThat(cache.get(1)).isNotNull();
+		assertThat(cache.get(1).get()).isNull();
+		cache.evict(1);
+		assertThat(cache.get(1)).isNull();
+	}
+
+	@Test
+	void typedCacheSharesEntriesWithItsSpringView() {
+		TimedCacheProperties properties = new TimedCacheProperties();
+		properties.setExpiry(Duration.ofMinutes(1));
+		TimedCache<Integer, String> typed = manager.createCache("pets", properties);
+		typed.put(1, "Leo");
+		assertThat(manager.getCache("pets").get(1, String.class)).isEqualTo("Leo");
+		manager.getCache("pets").clear();
+		assertThat(typed.size()).isZero();
+		assertThatThrownBy(() -> manager.createCache("pets", properties)).isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	void zeroExpiryKeepsEntriesUntilInvalidated() {
+		TimedCacheProperties properties = new TimedCacheProperties();
+		properties.setExpiry(Duration.ZERO);
+		AtomicLong now = new AtomicLong();
+		TimedCache<String, String> cache = new TimedCache<>("vets", properties, CacheExecutors.common(), now::get);
+		try {
+			cache.put("all", "vets");
+			now.addAndGet(TimeUnit.DAYS.toNanos(365));
+			cache.cleanUp();
+			assertThat(cache.getIfPresent("all")).isEqualTo("vets");
+			cache.invalidate("all");
+			assertThat(cache.getIfPresent("all")).isNull();
+		} finally {
+			cache.close();
+		}
+	}
+
+	@Test
+	void statisticsAreRegisteredWithJmxUntilDestroyed() throws Exception {
+		TimedCacheManagerProperties properties = new TimedCacheManagerProperties();
+		properties.getSpecs().put("jmx-vets", new TimedCacheProperties());
+		TimedCacheManager jmxManager = new TimedCacheManager(properties, CacheExecutors.common());
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("org.springframework.samples.petclinic:type=CacheStatistics,name=\"jmx-vets\"");
+		try {
+			Cache cache = jmxManager.getCache("jmx-vets");
+			cache.get("all", () -> "vets");
+			cache.get("all", () -> "vets");
+			assertThat(server.getAttribute(name, "HitCount")).isEqualTo(1L);
+			assertThat(server.getAttribute(name, "MissCount")).isEqualTo(1L);
+			assertThat(server.getAttribute(name, "Size")).isEqualTo(1L);
+		} finally {
+			jmxManager.destroy();
+		}
+		assertThat(server.isRegistered(name)).isFalse();
+	}
+
+	@Test
+	void loaderFailureIsWrapped() {
+		Cache cache = manager.getCache("vets");
+		assertThatThrownBy(() -> cache.get("all", () -> {
+			throw new IllegalStateException("database down");
+		})).isInstanceOf(Cache.ValueRetrievalException.class).hasRootCauseMessage("database down");
+	}
+
+}